@@ -16,6 +16,7 @@ create table tbl_users (
     full_name varchar,
     is_admin boolean
 );
+create unique index idx_users_username_lower on tbl_users (lower(username));
 
 drop table if exists tbl_buildings cascade;
 create table tbl_buildings (
@@ -85,3 +86,4 @@ create table tbl_projects (
     f_climate_region int,
     f_default_fuel int
 );
+create index idx_projects_user on tbl_projects (f_user);
@@ -0,0 +1,49 @@
+package com.greendelta.bioheating.calc;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/// Holds the fork-join pool for parallel calculations. The pool is wrapped so
+/// that it is not registered as an `Executor` bean, which would replace the
+/// default task executor of the application.
+public record CalcPool(ForkJoinPool pool) implements AutoCloseable {
+
+	public CalcPool {
+		Objects.requireNonNull(pool);
+	}
+
+	/// Creates a new pool with the given parallelism. A parallelism `<= 0`
+	/// means that all available processors are used.
+	public static CalcPool of(int parallelism) {
+		int n = parallelism > 0
+			? parallelism
+			: Runtime.getRuntime().availableProcessors();
+		return new CalcPool(new ForkJoinPool(n));
+	}
+
+	/// Applies the given function on the items in parallel and returns the
+	/// results in the order of the items.
+	public <T, R> List<R> map(List<T> items, Function<T, R> fn) {
+		// a parallel stream that is started from a task of a pool runs in that
+		// pool; `toList` keeps the encounter order of the items
+		var task = pool.submit(() -> items.parallelStream()
+			.map(fn)
+			.toList());
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("parallel calculation was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("parallel calculation failed", e.getCause());
+		}
+	}
+
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,145 @@
+package com.greendelta.bioheating.calc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.ItemBoundable;
+import org.locationtech.jts.index.strtree.ItemDistance;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/// Searches the `k` nearest connectors of a building polygon to a fixed set of
+/// street lines. The connectors are returned in ascending order of their
+/// length; connectors with the same length are ordered by the position of
+/// their street in the street list, so that all engines return exactly the
+/// same result.
+public sealed interface ConnectorSearch {
+
+	List<Connector> nearestOf(BuildingPolygon bp);
+
+	enum Engine {
+
+		/// Evaluates every street line for every building polygon.
+		BRUTE_FORCE,
+
+		/// Uses an R-tree of the street line envelopes to only evaluate the
+		/// street lines near a building polygon.
+		INDEXED
+	}
+
+	static ConnectorSearch of(
+		Engine engine, GeometryBuilder fn, List<StreetLine> streets, int k
+	) {
+		return engine == Engine.BRUTE_FORCE
+			? new BruteForce(fn, streets, k)
+			: new Indexed(fn, streets, k);
+	}
+
+	private static List<Connector> firstOf(List<Connector> cons, int k) {
+		cons.sort(Comparator.comparingDouble(Connector::length));
+		return cons.size() > k
+			? new ArrayList<>(cons.subList(0, k))
+			: cons;
+	}
+
+	record BruteForce(
+		GeometryBuilder fn, List<StreetLine> streets, int k
+	) implements ConnectorSearch {
+
+		@Override
+		public List<Connector> nearestOf(BuildingPolygon bp) {
+			var cons = new ArrayList<Connector>(streets.size());
+			for (var sl : streets) {
+				var con = fn.connectorOf(bp, sl);
+				if (!con.hasError()) {
+					cons.add(con.value());
+				}
+			}
+			return firstOf(cons, k);
+		}
+	}
+
+	final class Indexed implements ConnectorSearch {
+
+		private final GeometryBuilder fn;
+		private final int k;
+		private final List<Item> items;
+		private final STRtree index;
+
+		private Indexed(GeometryBuilder fn, List<StreetLine> streets, int k) {
+			this.fn = fn;
+			this.k = k;
+			this.items = new ArrayList<>(streets.size());
+			this.index = new STRtree();
+			for (int i = 0; i < streets.size(); i++) {
+				var item = new Item(i, streets.get(i));
+				items.add(item);
+				index.insert(item.line.line().getEnvelopeInternal(), item);
+			}
+			// building the tree is synchronized in JTS; after that, queries are
+			// read-only and the index can be shared between threads
+			index.build();
+		}
+
+		@Override
+		public List<Connector> nearestOf(BuildingPolygon bp) {
+			if (items.size() <= k)
+				return connectorsOf(bp, items);
+
+			// the k-nearest street lines give us an upper bound of the search
+			// radius; all streets in this radius are then evaluated exactly, so
+			// that ties at the k-th position are resolved as in the brute-force
+			// search
+			var env = bp.polygon().getEnvelopeInternal();
+			double radius = 0;
+			for (var obj : index.nearestNeighbour(env, bp, new Distance(), k)) {
+				var item = (Item) obj;
+				radius = Math.max(radius, bp.polygon().distance(item.line.line()));
+			}
+
+			var searchEnv = new Envelope(env);
+			searchEnv.expandBy(radius + 1e-9 * Math.max(1, radius));
+			var candidates = new ArrayList<Item>();
+			index.query(searchEnv, obj -> candidates.add((Item) obj));
+			candidates.sort(Comparator.comparingInt(Item::index));
+			var cons = connectorsOf(bp, candidates);
+
+			// when connectors in the search radius failed, we fall back to the
+			// brute-force search to get the same result
+			return cons.size() < k
+				? connectorsOf(bp, items)
+				: cons;
+		}
+
+		private List<Connector> connectorsOf(
+			BuildingPolygon bp, List<Item> candidates
+		) {
+			var cons = new ArrayList<Connector>(candidates.size());
+			for (var item : candidates) {
+				var con = fn.connectorOf(bp, item.line);
+				if (!con.hasError()) {
+					cons.add(con.value());
+				}
+			}
+			return firstOf(cons, k);
+		}
+
+		private record Item(int index, StreetLine line) {
+		}
+
+		private static class Distance implements ItemDistance {
+
+			@Override
+			public double distance(ItemBoundable a, ItemBoundable b) {
+				var line = a.getItem() instanceof Item item
+					? item.line
+					: ((Item) b.getItem()).line;
+				var bp = a.getItem() instanceof BuildingPolygon p
+					? p
+					: (BuildingPolygon) b.getItem();
+				return bp.polygon().distance(line.line());
+			}
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.greendelta.bioheating.calc;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/// A Dijkstra search on a CSR graph with an indexed binary heap. The state
+/// arrays are allocated once and can be reused for multiple searches: only
+/// the vertices that were reached in a search are reset before the next one.
+/// An instance is not thread-safe; parallel searches need their own
+/// instances.
+final class CsrDijkstra {
+
+	private final CsrGraph graph;
+
+	/// The distance of a vertex from its nearest source.
+	final double[] dist;
+	/// The edge to the predecessor of a vertex on the shortest path from its
+	/// nearest source, or -1.
+	final int[] pred;
+	/// The nearest source of a vertex, or -1 if it was not reached.
+	final int[] base;
+
+	private final int[] heap;
+	private final int[] heapPos;
+	private int heapSize;
+
+	private final int[] touched;
+	private int touchedCount;
+
+	CsrDijkstra(CsrGraph graph) {
+		this.graph = graph;
+		int n = graph.vertexCount();
+		dist = new double[n];
+		pred = new int[n];
+		base = new int[n];
+		heap = new int[n];
+		heapPos = new int[n];
+		touched = new int[n];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(pred, -1);
+		Arrays.fill(base, -1);
+		Arrays.fill(heapPos, -1);
+	}
+
+	/// Runs a search from all given sources at once. After this, each reached
+	/// vertex is assigned to its nearest source.
+	void run(int[] sources) {
+		reset();
+		for (int s : sources) {
+			if (dist[s] == 0)
+				continue;
+			touch(s, 0, -1, s);
+		}
+		while (heapSize > 0) {
+			relax(poll());
+		}
+	}
+
+	/// Runs a search from the given source that stops when the given number
+	/// of target vertices is settled, or when no further vertex is reachable.
+	void run(int source, IntPredicate isTarget, int targetCount) {
+		reset();
+		touch(source, 0, -1, source);
+		int open = targetCount;
+		while (heapSize > 0 && open > 0) {
+			int u = poll();
+			if (isTarget.test(u)) {
+				open--;
+			}
+			relax(u);
+		}
+	}
+
+	private void relax(int u) {
+		double du = dist[u];
+		int bu = base[u];
+		for (int i = graph.offsets[u]; i < graph.offsets[u + 1]; i++) {
+			int e = graph.adjacentEdges[i];
+			int v = graph.adjacentVertices[i];
+			double d = du + graph.weight(e);
+			if (d < dist[v]) {
+				touch(v, d, e, bu);
+			}
+		}
+	}
+
+	private void touch(int v, double d, int edge, int source) {
+		if (Double.isInfinite(dist[v])) {
+			touched[touchedCount++] = v;
+		}
+		dist[v] = d;
+		pred[v] = edge;
+		base[v] = source;
+		if (heapPos[v] < 0) {
+			heapPos[v] = heapSize;
+			heap[heapSize++] = v;
+		}
+		siftUp(heapPos[v]);
+	}
+
+	private void reset() {
+		for (int i = 0; i < touchedCount; i++) {
+			int v = touched[i];
+			dist[v] = Double.POSITIVE_INFINITY;
+			pred[v] = -1;
+			base[v] = -1;
+			heapPos[v] = -1;
+		}
+		touchedCount = 0;
+		heapSize = 0;
+	}
+
+	private int poll() {
+		int top = heap[0];
+		heapPos[top] = -1;
+		heapSize--;
+		if (heapSize > 0) {
+			int last = heap[heapSize];
+			heap[0] = last;
+			heapPos[last] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int i) {
+		int v = heap[i];
+		double d = dist[v];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			int p = heap[parent];
+			if (dist[p] <= d)
+				break;
+			heap[i] = p;
+			heapPos[p] = i;
+			i = parent;
+		}
+		heap[i] = v;
+		heapPos[v] = i;
+	}
+
+	private void siftDown(int i) {
+		int v = heap[i];
+		double d = dist[v];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize)
+				break;
+			if (child + 1 < heapSize && dist[heap[child + 1]] < dist[heap[child]]) {
+				child++;
+			}
+			int c = heap[child];
+			if (d <= dist[c])
+				break;
+			heap[i] = c;
+			heapPos[c] = i;
+			i = child;
+		}
+		heap[i] = v;
+		heapPos[v] = i;
+	}
+}
@@ -0,0 +1,307 @@
+package com.greendelta.bioheating.calc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+/// An immutable, undirected, weighted graph in compressed sparse row (CSR)
+/// format. The vertices are the integers `0 .. n-1` and the edges the integers
+/// `0 .. m-1`. Compared to a JGraphT graph, there are no objects per vertex or
+/// edge: the graph is stored in a few primitive arrays, where the incident
+/// edges of a vertex `v` are stored in the range
+/// `offsets[v] .. offsets[v + 1]` of the adjacency arrays.
+public final class CsrGraph {
+
+	private final int vertexCount;
+
+	private final int[] sources;
+	private final int[] targets;
+	private final double[] weights;
+
+	final int[] offsets;
+	final int[] adjacentEdges;
+	final int[] adjacentVertices;
+
+	private CsrGraph(
+		int vertexCount, int[] sources, int[] targets, double[] weights
+	) {
+		this.vertexCount = vertexCount;
+		this.sources = sources;
+		this.targets = targets;
+		this.weights = weights;
+
+		// count the degrees and sum them up to the offsets
+		int m = sources.length;
+		offsets = new int[vertexCount + 1];
+		for (int e = 0; e < m; e++) {
+			offsets[sources[e] + 1]++;
+			offsets[targets[e] + 1]++;
+		}
+		for (int v = 0; v < vertexCount; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+
+		// fill the adjacency arrays
+		adjacentEdges = new int[2 * m];
+		adjacentVertices = new int[2 * m];
+		var next = Arrays.copyOf(offsets, vertexCount);
+		for (int e = 0; e < m; e++) {
+			int u = sources[e];
+			int v = targets[e];
+			int iu = next[u]++;
+			adjacentEdges[iu] = e;
+			adjacentVertices[iu] = v;
+			int iv = next[v]++;
+			adjacentEdges[iv] = e;
+			adjacentVertices[iv] = u;
+		}
+	}
+
+	public static Builder builder(int vertexCount) {
+		return new Builder(vertexCount);
+	}
+
+	/// Converts the given JGraphT graph into a CSR graph. The vertex `i` of the
+	/// CSR graph is the vertex `vertices().get(i)` of the returned mapping.
+	public static <V> Mapping<V> of(Graph<V, DefaultWeightedEdge> graph) {
+		var vertices = new ArrayList<V>(graph.vertexSet());
+		var ids = new HashMap<V, Integer>(vertices.size());
+		for (int i = 0; i < vertices.size(); i++) {
+			ids.put(vertices.get(i), i);
+		}
+		var builder = builder(vertices.size());
+		for (var e : graph.edgeSet()) {
+			builder.addEdge(
+				ids.get(graph.getEdgeSource(e)),
+				ids.get(graph.getEdgeTarget(e)),
+				graph.getEdgeWeight(e));
+		}
+		return new Mapping<>(builder.build(), vertices, ids);
+	}
+
+	/// Converts this graph into a JGraphT graph with the same vertex IDs. When
+	/// there are parallel edges, only the edge with the lowest weight is kept.
+	public Graph<Integer, DefaultWeightedEdge> toGraph() {
+		var g = new SimpleWeightedGraph<Integer, DefaultWeightedEdge>(
+			DefaultWeightedEdge.class);
+		for (int v = 0; v < vertexCount; v++) {
+			g.addVertex(v);
+		}
+		for (int e = 0; e < sources.length; e++) {
+			var edge = g.getEdge(sources[e], targets[e]);
+			if (edge == null) {
+				edge = g.addEdge(sources[e], targets[e]);
+				g.setEdgeWeight(edge, weights[e]);
+			} else if (weights[e] < g.getEdgeWeight(edge)) {
+				g.setEdgeWeight(edge, weights[e]);
+			}
+		}
+		return g;
+	}
+
+	public int vertexCount() {
+		return vertexCount;
+	}
+
+	public int edgeCount() {
+		return sources.length;
+	}
+
+	public int source(int edge) {
+		return sources[edge];
+	}
+
+	public int target(int edge) {
+		return targets[edge];
+	}
+
+	public double weight(int edge) {
+		return weights[edge];
+	}
+
+	public int degreeOf(int vertex) {
+		return offsets[vertex + 1] - offsets[vertex];
+	}
+
+	/// Returns the vertex on the other side of the given edge.
+	public int opposite(int edge, int vertex) {
+		return sources[edge] == vertex
+			? targets[edge]
+			: sources[edge];
+	}
+
+	/// Returns the IDs of the edges that are incident to the given vertex.
+	public int[] edgesOf(int vertex) {
+		return Arrays.copyOfRange(
+			adjacentEdges, offsets[vertex], offsets[vertex + 1]);
+	}
+
+	/// Calculates a minimum spanning forest of the given edges with Kruskal's
+	/// algorithm and returns the IDs of the selected edges.
+	public int[] minSpanningForest(int[] edges) {
+		var sorted = sortByWeight(edges);
+		var sets = new UnionFind(vertexCount);
+		var selected = new int[Math.min(edges.length, Math.max(0, vertexCount - 1))];
+		int n = 0;
+		for (int e : sorted) {
+			if (n == selected.length)
+				break;
+			if (sets.union(sources[e], targets[e])) {
+				selected[n++] = e;
+			}
+		}
+		return n == selected.length
+			? selected
+			: Arrays.copyOf(selected, n);
+	}
+
+	/// Returns a copy of the given edge IDs, sorted by the weights of the
+	/// edges. The sort is a stable merge sort on the primitive IDs, so that
+	/// edges with equal weights keep their order and no IDs are boxed.
+	private int[] sortByWeight(int[] edges) {
+		var sorted = edges.clone();
+		var buffer = new int[sorted.length];
+		for (int width = 1; width < sorted.length; width *= 2) {
+			for (int lo = 0; lo < sorted.length - width; lo += 2 * width) {
+				int mid = lo + width;
+				int hi = Math.min(lo + 2 * width, sorted.length);
+				if (Double.compare(weights[sorted[mid - 1]], weights[sorted[mid]]) <= 0)
+					continue; // already in order
+				merge(sorted, buffer, lo, mid, hi);
+			}
+		}
+		return sorted;
+	}
+
+	private void merge(int[] ids, int[] buffer, int lo, int mid, int hi) {
+		System.arraycopy(ids, lo, buffer, lo, hi - lo);
+		int i = lo, j = mid;
+		for (int k = lo; k < hi; k++) {
+			if (i < mid && (j >= hi
+				|| Double.compare(weights[buffer[i]], weights[buffer[j]]) <= 0)) {
+				ids[k] = buffer[i++];
+			} else {
+				ids[k] = buffer[j++];
+			}
+		}
+	}
+
+	/// Calculates a minimum spanning forest of the whole graph.
+	public int[] minSpanningForest() {
+		var edges = new int[sources.length];
+		Arrays.setAll(edges, i -> i);
+		return minSpanningForest(edges);
+	}
+
+	public static class Builder {
+
+		private int vertexCount;
+		private int[] sources = new int[16];
+		private int[] targets = new int[16];
+		private double[] weights = new double[16];
+		private int size;
+
+		private Builder(int vertexCount) {
+			this.vertexCount = vertexCount;
+		}
+
+		/// Adds a new vertex and returns its ID.
+		public int addVertex() {
+			return vertexCount++;
+		}
+
+		public int vertexCount() {
+			return vertexCount;
+		}
+
+		/// Adds an edge and returns its ID. Self-loops are ignored and -1 is
+		/// returned for them.
+		public int addEdge(int u, int v, double weight) {
+			if (u < 0 || u >= vertexCount || v < 0 || v >= vertexCount)
+				throw new IndexOutOfBoundsException(
+					"invalid edge " + u + " -> " + v + " in graph with "
+						+ vertexCount + " vertices");
+			if (u == v)
+				return -1;
+			if (size == sources.length) {
+				int n = size * 2;
+				sources = Arrays.copyOf(sources, n);
+				targets = Arrays.copyOf(targets, n);
+				weights = Arrays.copyOf(weights, n);
+			}
+			sources[size] = u;
+			targets[size] = v;
+			weights[size] = weight;
+			return size++;
+		}
+
+		public double weight(int edge) {
+			return weights[edge];
+		}
+
+		public void setWeight(int edge, double weight) {
+			weights[edge] = weight;
+		}
+
+		public CsrGraph build() {
+			return new CsrGraph(
+				vertexCount,
+				Arrays.copyOf(sources, size),
+				Arrays.copyOf(targets, size),
+				Arrays.copyOf(weights, size));
+		}
+	}
+
+	/// A CSR graph that was created from a JGraphT graph with the mapping
+	/// between the vertices of both graphs.
+	public record Mapping<V>(
+		CsrGraph graph, List<V> vertices, Map<V, Integer> ids
+	) {
+	}
+
+	private static class UnionFind {
+
+		private final int[] parents;
+		private final byte[] ranks;
+
+		UnionFind(int n) {
+			parents = new int[n];
+			ranks = new byte[n];
+			for (int i = 0; i < n; i++) {
+				parents[i] = i;
+			}
+		}
+
+		int find(int i) {
+			while (parents[i] != i) {
+				parents[i] = parents[parents[i]];
+				i = parents[i];
+			}
+			return i;
+		}
+
+		/// Merges the sets of the given elements and returns `true` when they
+		/// were in different sets.
+		boolean union(int a, int b) {
+			int ra = find(a);
+			int rb = find(b);
+			if (ra == rb)
+				return false;
+			if (ranks[ra] < ranks[rb]) {
+				parents[ra] = rb;
+			} else if (ranks[ra] > ranks[rb]) {
+				parents[rb] = ra;
+			} else {
+				parents[rb] = ra;
+				ranks[ra]++;
+			}
+			return true;
+		}
+	}
+}
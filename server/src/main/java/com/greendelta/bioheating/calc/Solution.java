@@ -1,7 +1,6 @@
 package com.greendelta.bioheating.calc;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 
 import org.locationtech.jts.geom.Envelope;
@@ -21,6 +20,26 @@ public record Solution(
 	}
 
 	public static Solution calculate(GeoMap map) {
+		return calculate(map, ConnectorSearch.Engine.INDEXED);
+	}
+
+	/// Calculates the solution with the given engine for the connector search.
+	/// The engines return the same results; the brute-force engine is mainly
+	/// useful to check the results of the indexed engine.
+	public static Solution calculate(
+		GeoMap map, ConnectorSearch.Engine engine
+	) {
+		return calculate(map, engine, null);
+	}
+
+	/// Calculates the solution and distributes the connector search of the
+	/// building polygons over the given pool. When the pool is `null`, the
+	/// search runs in the calling thread. The connectors are always returned in
+	/// the order of the building polygons, so the result does not depend on the
+	/// pool.
+	public static Solution calculate(
+		GeoMap map, ConnectorSearch.Engine engine, CalcPool pool
+	) {
 		if (map == null
 			|| map.buildings().isEmpty()
 			|| map.streets().isEmpty())
@@ -51,22 +70,16 @@ public record Solution(
 		}
 
 		// create connectors
-		var cons = new ArrayList<Connector>(bps.size() * sls.size());
-		var buff = new ArrayList<Connector>(sls.size());
-		for (var bp : bps) {
-			for (var sl : sls) {
-				var con = fun.connectorOf(bp, sl);
-				if (!con.hasError()) {
-					buff.add(con.value());
-				}
+		var search = ConnectorSearch.of(engine, fun, sls, 3);
+		var cons = new ArrayList<Connector>(bps.size() * Math.min(3, sls.size()));
+		if (pool == null || bps.size() < 2) {
+			for (var bp : bps) {
+				cons.addAll(search.nearestOf(bp));
 			}
-			buff.sort(Comparator.comparingDouble(Connector::length));
-			if (buff.size() > 3) {
-				cons.addAll(buff.subList(0, 3));
-			} else {
-				cons.addAll(buff);
+		} else {
+			for (var nearest : pool.map(bps, search::nearestOf)) {
+				cons.addAll(nearest);
 			}
-			buff.clear();
 		}
 
 		return new Solution(bps, sls, cons);
@@ -1,96 +1,467 @@
 package com.greendelta.bioheating.calc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 import org.jgrapht.Graph;
-import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
-import org.jgrapht.alg.spanning.KruskalMinimumSpanningTree;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 
 import com.greendelta.bioheating.util.Res;
 
-public class SteinerTree<V> {
+/// Computes an approximation of the Steiner tree of a set of terminal nodes in
+/// an undirected, weighted graph with the algorithm of Mehlhorn (1988). The
+/// total weight of the resulting tree is at most twice the weight of the
+/// optimal Steiner tree.
+///
+/// Instead of the full metric closure of the terminals, which would require a
+/// shortest path search for each pair of terminals, the algorithm uses the
+/// Voronoi regions of the terminals that are calculated with a single
+/// multi-source Dijkstra search. See: K. Mehlhorn, A faster approximation
+/// algorithm for the Steiner problem in graphs, Information Processing
+/// Letters 27 (1988) 125-128.
+///
+/// Optionally, the exact metric closure of the terminals can be used, as in
+/// the algorithm of Kou, Markowsky, and Berman (1981). It is calculated with a
+/// Dijkstra search from each terminal; these searches can run in parallel.
+/// The shortest paths between the terminals are kept from these searches for
+/// the expansion of the tree; this takes memory in the order of the number
+/// of terminals times the size of their shortest path trees.
+///
+/// The algorithm runs on a [CsrGraph] with primitive vertex and edge IDs.
+/// JGraphT graphs are converted into that format first.
+public class SteinerTree {
 
-	private final Graph<V, DefaultWeightedEdge> graph;
-	private final Set<V> terminals;
+	private final CsrGraph graph;
+	private final int[] terminals;
+	private final boolean[] isTerminal;
+	private final Closure closureType;
+	private final CalcPool pool;
 
-	private SteinerTree(Graph<V, DefaultWeightedEdge> graph, Set<V> terminals) {
+	/// The search state of the Voronoi regions or of the path searches when
+	/// the tree is expanded.
+	private final CsrDijkstra search;
+
+	/// The type of the terminal closure from which the minimum spanning tree
+	/// is calculated.
+	public enum Closure {
+
+		/// A closure from the Voronoi regions of the terminals, calculated with a
+		/// single multi-source Dijkstra search (Mehlhorn).
+		VORONOI,
+
+		/// The exact metric closure of the terminals, calculated with a Dijkstra
+		/// search from each terminal (Kou, Markowsky, and Berman).
+		EXACT
+	}
+
+	private SteinerTree(
+		CsrGraph graph,
+		int[] terminals,
+		boolean[] isTerminal,
+		Closure closureType,
+		CalcPool pool
+	) {
 		this.graph = graph;
 		this.terminals = terminals;
+		this.isTerminal = isTerminal;
+		this.closureType = closureType;
+		this.pool = pool;
+		this.search = new CsrDijkstra(graph);
 	}
 
 	public static <V> Res<Graph<V, DefaultWeightedEdge>> compute(
 		Graph<V, DefaultWeightedEdge> graph, Set<V> terminals
 	) {
-		return graph == null || terminals == null || terminals.isEmpty()
-			? Res.error("empty graph or no terminals provided")
-			: new SteinerTree<>(graph, terminals).compute();
+		return compute(graph, terminals, Closure.VORONOI, null);
 	}
 
-	private Res<Graph<V, DefaultWeightedEdge>> compute() {
-		if (terminals.size() == 1) {
-			var g = newGraph();
-			g.addVertex(terminals.iterator().next());
-			return Res.of(g);
+	/// Computes the Steiner tree with the given closure type. For the exact
+	/// closure, the Dijkstra searches of the terminals are distributed over the
+	/// given pool; when the pool is `null`, they run in the calling thread.
+	public static <V> Res<Graph<V, DefaultWeightedEdge>> compute(
+		Graph<V, DefaultWeightedEdge> graph,
+		Set<V> terminals,
+		Closure closureType,
+		CalcPool pool
+	) {
+		if (graph == null || terminals == null || terminals.isEmpty())
+			return Res.error("empty graph or no terminals provided");
+		for (var t : terminals) {
+			if (!graph.containsVertex(t))
+				return Res.error("terminal is not in graph: " + t);
 		}
 
-		var metricClosure = metricClosure();
-		var metricTree = minTreeOf(metricClosure);
+		var mapping = CsrGraph.of(graph);
+		var ts = terminals.stream()
+			.mapToInt(mapping.ids()::get)
+			.toArray();
+		var res = compute(mapping.graph(), ts, closureType, pool);
+		if (res.hasError())
+			return res.castError();
 
-		return null;
+		var csr = mapping.graph();
+		var vertices = mapping.vertices();
+		var tree = new SimpleWeightedGraph<V, DefaultWeightedEdge>(
+			DefaultWeightedEdge.class);
+		for (var t : terminals) {
+			tree.addVertex(t);
+		}
+		for (int e : res.value()) {
+			var u = vertices.get(csr.source(e));
+			var v = vertices.get(csr.target(e));
+			tree.addVertex(u);
+			tree.addVertex(v);
+			var edge = tree.addEdge(u, v);
+			if (edge != null) {
+				tree.setEdgeWeight(edge, csr.weight(e));
+			}
+		}
+		return Res.of(tree);
+	}
+
+	/// Computes the Steiner tree of the given terminals with Mehlhorn's
+	/// algorithm and returns the IDs of the tree edges in the graph.
+	public static Res<int[]> compute(CsrGraph graph, int[] terminals) {
+		return compute(graph, terminals, Closure.VORONOI, null);
 	}
 
+	/// Computes the Steiner tree with the given closure type and returns the
+	/// IDs of the tree edges in the graph.
+	public static Res<int[]> compute(
+		CsrGraph graph, int[] terminals, Closure closureType, CalcPool pool
+	) {
+		if (graph == null || terminals == null || terminals.length == 0)
+			return Res.error("empty graph or no terminals provided");
 
-	/// Compute the metric closure of the terminal nodes.
-	private Graph<V, DefaultWeightedEdge> metricClosure() {
-		var closure = newGraph();
-		for (var t : terminals) {
-			closure.addVertex(t);
+		// remove duplicate terminals
+		var isTerminal = new boolean[graph.vertexCount()];
+		var ts = new int[terminals.length];
+		int count = 0;
+		for (int t : terminals) {
+			if (t < 0 || t >= graph.vertexCount())
+				return Res.error("terminal is not in graph: " + t);
+			if (isTerminal[t])
+				continue;
+			isTerminal[t] = true;
+			ts[count++] = t;
+		}
+		if (count == 1)
+			return Res.of(new int[0]);
+
+		var type = closureType != null ? closureType : Closure.VORONOI;
+		return new SteinerTree(graph, Arrays.copyOf(ts, count), isTerminal, type, pool)
+			.compute();
+	}
+
+	private Res<int[]> compute() {
+		var closure = closureType == Closure.EXACT
+			? exactClosure()
+			: voronoiClosure();
+		var metricTree = closure.graph.minSpanningForest();
+		if (metricTree.length < terminals.length - 1)
+			return Res.error("the terminals are not connected in the graph");
+
+		var expanded = expand(metricTree, closure);
+		var tree = graph.minSpanningForest(expanded);
+		return Res.of(pruneLeaves(tree));
+	}
+
+	/// Creates the graph of the terminals where two terminals are connected
+	/// when their Voronoi regions are connected by an edge. The Voronoi regions
+	/// are calculated with a Dijkstra search from all terminals at once, that
+	/// assigns each node to its nearest terminal. The weight of a connection is
+	/// the shortest path length over such a bridge edge. Parallel connections
+	/// are kept, the spanning tree will select the shortest of them.
+	private TerminalGraph voronoiClosure() {
+		search.run(terminals);
+		var index = terminalIndex();
+
+		var builder = CsrGraph.builder(terminals.length);
+		var bridges = new IntList();
+		for (int e = 0; e < graph.edgeCount(); e++) {
+			int u = graph.source(e);
+			int v = graph.target(e);
+			int bu = search.base[u];
+			int bv = search.base[v];
+			if (bu < 0 || bv < 0 || bu == bv)
+				continue;
+			double w = search.dist[u] + graph.weight(e) + search.dist[v];
+			builder.addEdge(index[bu], index[bv], w);
+			bridges.add(e);
+		}
+		return new TerminalGraph(builder.build(), bridges.toArray());
+	}
+
+	/// Creates the metric closure of the terminals, a complete graph of the
+	/// terminals where each edge has the shortest path length between two
+	/// terminals as weight. The shortest path trees of the searches are kept,
+	/// so that the paths do not need to be searched again when the tree is
+	/// expanded.
+	private TerminalGraph exactClosure() {
+		List<PathTree> trees;
+		if (pool != null) {
+			// the search state is allocated per chunk of terminals and not per
+			// thread, as the threads of the pool outlive the calculation
+			int chunks = Math.min(
+				terminals.length, 4 * pool.pool().getParallelism());
+			var ranges = new ArrayList<int[]>(chunks);
+			for (int c = 0; c < chunks; c++) {
+				ranges.add(new int[]{
+					c * terminals.length / chunks,
+					(c + 1) * terminals.length / chunks});
+			}
+			trees = pool.map(ranges, range -> {
+				var treeSearch = new TreeSearch(new CsrDijkstra(graph));
+				var chunk = new ArrayList<PathTree>(range[1] - range[0]);
+				for (int i = range[0]; i < range[1]; i++) {
+					chunk.add(treeSearch.run(i));
+				}
+				return chunk;
+			}).stream()
+				.flatMap(List::stream)
+				.toList();
+		} else {
+			var treeSearch = new TreeSearch(search);
+			trees = new ArrayList<>(terminals.length);
+			for (int i = 0; i < terminals.length; i++) {
+				trees.add(treeSearch.run(i));
+			}
 		}
 
-		var pathFn = new DijkstraShortestPath<>(graph);
-		var ts = new ArrayList<>(terminals);
-		for (int i = 0; i < ts.size(); i++) {
-			for (int j = i + 1; j < ts.size(); j++) {
-				var ti = ts.get(i);
-				var tj = ts.get(j);
-				var path = pathFn.getPath(ti, tj);
-				if (path == null)
+		var builder = CsrGraph.builder(terminals.length);
+		for (int i = 0; i < terminals.length; i++) {
+			var di = trees.get(i).dists;
+			for (int j = i + 1; j < terminals.length; j++) {
+				if (!Double.isInfinite(di[j])) {
+					builder.addEdge(i, j, di[j]);
+				}
+			}
+		}
+		return new TerminalGraph(builder.build(), null, trees);
+	}
+
+	/// Replaces the edges of the metric tree by the corresponding paths in the
+	/// original graph and returns the IDs of these edges.
+	private int[] expand(int[] metricTree, TerminalGraph closure) {
+		var marked = new boolean[graph.edgeCount()];
+		var edges = new IntList();
+		for (int ce : metricTree) {
+			if (closure.trees != null) {
+				var tree = closure.trees.get(closure.graph.source(ce));
+				int v = terminals[closure.graph.target(ce)];
+				int e;
+				while ((e = tree.predOf(v)) >= 0) {
+					addEdge(e, marked, edges);
+					v = graph.opposite(e, v);
+				}
+				continue;
+			}
+			int bridge = closure.bridges[ce];
+			addEdge(bridge, marked, edges);
+			addPath(graph.source(bridge), marked, edges);
+			addPath(graph.target(bridge), marked, edges);
+		}
+		return edges.toArray();
+	}
+
+	/// Adds the edges on the path from the given vertex back to the source of
+	/// the last search.
+	private void addPath(int v, boolean[] marked, IntList edges) {
+		int next = v;
+		int e = search.pred[next];
+		while (e >= 0) {
+			addEdge(e, marked, edges);
+			next = graph.opposite(e, next);
+			e = search.pred[next];
+		}
+	}
+
+	private void addEdge(int e, boolean[] marked, IntList edges) {
+		if (!marked[e]) {
+			marked[e] = true;
+			edges.add(e);
+		}
+	}
+
+	/// Removes the leaves of the tree that are not terminals, until all
+	/// leaves are terminals.
+	private int[] pruneLeaves(int[] tree) {
+		var inTree = new boolean[graph.edgeCount()];
+		var degrees = new int[graph.vertexCount()];
+		for (int e : tree) {
+			inTree[e] = true;
+			degrees[graph.source(e)]++;
+			degrees[graph.target(e)]++;
+		}
+
+		var queue = new IntList();
+		for (int e : tree) {
+			for (int v : new int[]{graph.source(e), graph.target(e)}) {
+				if (degrees[v] == 1 && !isTerminal[v]) {
+					queue.add(v);
+				}
+			}
+		}
+
+		int removed = 0;
+		for (int qi = 0; qi < queue.size; qi++) {
+			int v = queue.values[qi];
+			if (degrees[v] != 1)
+				continue;
+			for (int i = graph.offsets[v]; i < graph.offsets[v + 1]; i++) {
+				int e = graph.adjacentEdges[i];
+				if (!inTree[e])
 					continue;
-				var edge = closure.addEdge(ti, tj);
-				if (edge != null) {
-					closure.setEdgeWeight(edge, path.getWeight());
+				inTree[e] = false;
+				removed++;
+				degrees[v]--;
+				int n = graph.adjacentVertices[i];
+				degrees[n]--;
+				if (degrees[n] == 1 && !isTerminal[n]) {
+					queue.add(n);
 				}
+				break;
+			}
+		}
+
+		var pruned = new int[tree.length - removed];
+		int i = 0;
+		for (int e : tree) {
+			if (inTree[e]) {
+				pruned[i++] = e;
 			}
 		}
-		return closure;
+		return pruned;
 	}
 
-	private  Graph<V, DefaultWeightedEdge> minTreeOf(
-		Graph<V, DefaultWeightedEdge> graph
+	/// Maps the terminal vertices to their positions in the terminal array.
+	private int[] terminalIndex() {
+		var index = new int[graph.vertexCount()];
+		for (int i = 0; i < terminals.length; i++) {
+			index[terminals[i]] = i;
+		}
+		return index;
+	}
+
+	/// The closure graph of the terminals, where vertex `i` is the terminal
+	/// `terminals[i]`. For the Voronoi closure, `bridges[e]` is the edge of the
+	/// original graph that bridges the Voronoi regions of the closure edge `e`.
+	/// For the exact closure, the bridges are `null` and `trees[i]` contains
+	/// the shortest paths from terminal `i` to the other terminals.
+	private record TerminalGraph(
+		CsrGraph graph, int[] bridges, List<PathTree> trees
 	) {
-		var edges = 	new KruskalMinimumSpanningTree<>(graph)
-			.getSpanningTree()
-			.getEdges();
-		var mst = newGraph();
-		for (var v : graph.vertexSet()) {
-			mst.addVertex(v);
-		}
-		for (var e : edges) {
-			var vi = graph.getEdgeSource(e);
-			var vj = graph.getEdgeTarget(e);
-			var edge = mst.addEdge(vi, vj);
-			if (edge != null) {
-				mst.setEdgeWeight(edge, graph.getEdgeWeight(e));
+
+		TerminalGraph(CsrGraph graph, int[] bridges) {
+			this(graph, bridges, null);
+		}
+	}
+
+	/// Runs the Dijkstra searches of the exact closure with a reusable search
+	/// state. Not thread-safe.
+	private class TreeSearch {
+
+		private final CsrDijkstra dijkstra;
+		private final int[] marks;
+		private int round;
+
+		TreeSearch(CsrDijkstra dijkstra) {
+			this.dijkstra = dijkstra;
+			this.marks = new int[graph.vertexCount()];
+		}
+
+		/// Runs a Dijkstra search from the terminal with the given index,
+		/// which stops when all terminals are reached, and returns the
+		/// distances and paths to the terminals.
+		PathTree run(int source) {
+			dijkstra.run(terminals[source], v -> isTerminal[v], terminals.length);
+			round++;
+			var dists = new double[terminals.length];
+			var preds = new LongList();
+			for (int i = 0; i < terminals.length; i++) {
+				int v = terminals[i];
+				dists[i] = dijkstra.dist[v];
+				if (Double.isInfinite(dists[i]))
+					continue;
+				// collect the path back to the source, until it joins a path
+				// that was already collected
+				while (dijkstra.pred[v] >= 0 && marks[v] != round) {
+					marks[v] = round;
+					int e = dijkstra.pred[v];
+					preds.add(((long) v << 32) | e);
+					v = graph.opposite(e, v);
+				}
+			}
+			return PathTree.of(dists, preds.toSortedArray());
+		}
+	}
+
+	/// The distances from a terminal to the other terminals and the union of
+	/// the shortest paths to them. A path is stored with the predecessor edge
+	/// of each vertex on it; these pairs are packed into longs, with the
+	/// vertex in the upper 32 bits, and sorted by vertex, so that the edge of
+	/// a vertex can be found with a binary search.
+	private record PathTree(double[] dists, int[] vertices, int[] preds) {
+
+		static PathTree of(double[] dists, long[] pairs) {
+			var vertices = new int[pairs.length];
+			var preds = new int[pairs.length];
+			for (int i = 0; i < pairs.length; i++) {
+				vertices[i] = (int) (pairs[i] >>> 32);
+				preds[i] = (int) pairs[i];
+			}
+			return new PathTree(dists, vertices, preds);
+		}
+
+		/// Returns the edge to the predecessor of the given vertex on the path
+		/// from the source, or -1 when the vertex is the source or not on a
+		/// path.
+		int predOf(int vertex) {
+			int i = Arrays.binarySearch(vertices, vertex);
+			return i >= 0
+				? preds[i]
+				: -1;
+		}
+	}
+
+	/// A growable list of primitive integers.
+	private static class IntList {
+
+		int[] values = new int[16];
+		int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
 			}
+			values[size++] = value;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
 		}
-		return mst;
 	}
 
+	/// A growable list of primitive longs.
+	private static class LongList {
 
-	private Graph<V, DefaultWeightedEdge> newGraph() {
-		return new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+		long[] values = new long[16];
+		int size;
+
+		void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		long[] toSortedArray() {
+			var array = Arrays.copyOf(values, size);
+			Arrays.sort(array);
+			return array;
+		}
 	}
 }
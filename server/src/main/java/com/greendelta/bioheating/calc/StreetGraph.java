@@ -0,0 +1,50 @@
+package com.greendelta.bioheating.calc;
+
+import java.util.Arrays;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import com.greendelta.bioheating.util.Res;
+
+/// The street network of a solution as a weighted graph. The vertices are
+/// identified by the integers `0 .. n-1`; the position of a vertex is stored
+/// at its ID in the `vertices` array. The streets are split at their
+/// intersections and at the attachment points of the connectors. Each building
+/// polygon has an own vertex which is connected by its connectors to the
+/// street network; `buildingVertices[i]` is the vertex ID of the building
+/// polygon `i` in the solution. The graph is stored in CSR format; use
+/// [CsrGraph#toGraph()] when a JGraphT graph is needed.
+public record StreetGraph(
+	CsrGraph graph,
+	Coordinate[] vertices,
+	int[] buildingVertices
+) {
+
+	/// The default tolerance in map units (typically meters) within which
+	/// nodes are snapped together.
+	public static final double DEFAULT_TOLERANCE = 0.01;
+
+	public static Res<StreetGraph> of(Solution solution) {
+		return of(solution, DEFAULT_TOLERANCE);
+	}
+
+	public static Res<StreetGraph> of(Solution solution, double tolerance) {
+		if (solution == null || solution.isEmpty())
+			return Res.error("solution is empty");
+		if (tolerance < 0)
+			return Res.error("invalid snapping tolerance: " + tolerance);
+		try {
+			return Res.of(new StreetGraphBuilder(solution, tolerance).build());
+		} catch (Exception e) {
+			return Res.error("failed to build street graph", e);
+		}
+	}
+
+	/// Returns the vertices of the buildings that are connected to the
+	/// street network.
+	public int[] terminals() {
+		return Arrays.stream(buildingVertices)
+			.filter(v -> graph.degreeOf(v) > 0)
+			.toArray();
+	}
+}
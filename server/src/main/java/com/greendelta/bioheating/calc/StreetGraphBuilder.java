@@ -0,0 +1,193 @@
+package com.greendelta.bioheating.calc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.locationtech.jts.algorithm.RobustLineIntersector;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.LineSegment;
+import org.locationtech.jts.index.kdtree.KdTree;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.linearref.LocationIndexedLine;
+import org.locationtech.jts.noding.IntersectionAdder;
+import org.locationtech.jts.noding.MCIndexNoder;
+import org.locationtech.jts.noding.NodedSegmentString;
+import org.locationtech.jts.noding.SegmentString;
+
+/// Builds the street graph of a solution. All steps use spatial indices, so
+/// that the graph of a whole town can be built quickly:
+///
+/// 1. street ends that are within the tolerance of another street are added
+///    as nodes to that street (using an R-tree of the street segments)
+/// 2. the attachment points of the connectors are added as nodes to their
+///    streets
+/// 3. the streets are noded at their intersections with a monotone chain
+///    index and split into edges
+/// 4. the end points of the edges are snapped together within the tolerance
+///    with a KD-tree and mapped to integer vertex IDs
+///
+/// The graph is collected directly into the arrays of a [CsrGraph]; parallel
+/// edges are merged by keeping the shortest one.
+class StreetGraphBuilder {
+
+	private final Solution solution;
+	private final double tolerance;
+
+	private final KdTree nodes;
+	private final List<Coordinate> vertices = new ArrayList<>();
+	private final CsrGraph.Builder graph = CsrGraph.builder(0);
+	private final HashMap<Long, Integer> edges = new HashMap<>();
+
+	StreetGraphBuilder(Solution solution, double tolerance) {
+		this.solution = solution;
+		this.tolerance = tolerance;
+		this.nodes = new KdTree(tolerance);
+	}
+
+	StreetGraph build() {
+		var segStrings = segmentStringsOf(solution.streets());
+		snapStreetEnds(segStrings);
+		addConnectorNodes(segStrings);
+
+		// split the streets at their intersections and added nodes
+		var noder = new MCIndexNoder(new IntersectionAdder(new RobustLineIntersector()));
+		noder.computeNodes(segStrings);
+		for (var obj : noder.getNodedSubstrings()) {
+			var ss = (SegmentString) obj;
+			var cs = ss.getCoordinates();
+			int u = vertexOf(cs[0]);
+			int v = vertexOf(cs[cs.length - 1]);
+			addEdge(u, v, lengthOf(cs));
+		}
+
+		// add the buildings and connectors
+		var buildings = solution.buildings();
+		var buildingIdx = new IdentityHashMap<BuildingPolygon, Integer>();
+		var buildingVertices = new int[buildings.size()];
+		for (int i = 0; i < buildings.size(); i++) {
+			var bp = buildings.get(i);
+			buildingIdx.put(bp, i);
+			vertices.add(bp.polygon().getCentroid().getCoordinate());
+			buildingVertices[i] = graph.addVertex();
+		}
+		for (var con : solution.connectors()) {
+			var bi = buildingIdx.get(con.buildingPolygon());
+			if (bi == null)
+				continue;
+			int u = buildingVertices[bi];
+			int v = vertexOf(attachmentOf(con));
+			addEdge(u, v, con.length());
+		}
+
+		return new StreetGraph(
+			graph.build(), vertices.toArray(new Coordinate[0]), buildingVertices);
+	}
+
+	private List<NodedSegmentString> segmentStringsOf(List<StreetLine> streets) {
+		var segStrings = new ArrayList<NodedSegmentString>(streets.size());
+		for (var sl : streets) {
+			var cs = sl.line().getCoordinates();
+			var xy = new Coordinate[cs.length];
+			for (int i = 0; i < cs.length; i++) {
+				xy[i] = new Coordinate(cs[i].x, cs[i].y);
+			}
+			segStrings.add(new NodedSegmentString(xy, sl));
+		}
+		return segStrings;
+	}
+
+	/// Adds a node to a street when the end of another street is within the
+	/// tolerance of it but does not exactly touch it, e.g. at T-junctions with
+	/// a small gap. The end point is later snapped to that node.
+	private void snapStreetEnds(List<NodedSegmentString> segStrings) {
+		if (tolerance <= 0)
+			return;
+		var index = new STRtree();
+		for (var ss : segStrings) {
+			for (int i = 0; i < ss.size() - 1; i++) {
+				var seg = new LineSegment(ss.getCoordinate(i), ss.getCoordinate(i + 1));
+				var env = new Envelope(seg.p0, seg.p1);
+				index.insert(env, new Segment(ss, i, seg));
+			}
+		}
+
+		for (var ss : segStrings) {
+			if (ss.size() < 2)
+				continue;
+			for (var end : List.of(ss.getCoordinate(0), ss.getCoordinate(ss.size() - 1))) {
+				var env = new Envelope(end);
+				env.expandBy(tolerance);
+				index.query(env, obj -> {
+					var s = (Segment) obj;
+					if (s.owner == ss)
+						return;
+					double d = s.seg.distance(end);
+					if (d > 0 && d <= tolerance) {
+						s.owner.addIntersection(s.seg.closestPoint(end), s.index);
+					}
+				});
+			}
+		}
+	}
+
+	private void addConnectorNodes(List<NodedSegmentString> segStrings) {
+		var owners = new IdentityHashMap<StreetLine, NodedSegmentString>();
+		for (var ss : segStrings) {
+			owners.put((StreetLine) ss.getData(), ss);
+		}
+		for (var con : solution.connectors()) {
+			var ss = owners.get(con.streetLine());
+			if (ss == null || ss.size() < 2)
+				continue;
+			var point = attachmentOf(con);
+			var loc = new LocationIndexedLine(con.streetLine().line()).project(point);
+			int segIdx = Math.min(loc.getSegmentIndex(), ss.size() - 2);
+			ss.addIntersection(new Coordinate(point.x, point.y), segIdx);
+		}
+	}
+
+	/// Returns the point where the connector is attached to its street.
+	private Coordinate attachmentOf(Connector con) {
+		var line = con.connectorLine();
+		return line.getCoordinateN(line.getNumPoints() - 1);
+	}
+
+	private int vertexOf(Coordinate c) {
+		int next = vertices.size();
+		var node = nodes.insert(new Coordinate(c.x, c.y), next);
+		int id = (Integer) node.getData();
+		if (id == next) {
+			vertices.add(node.getCoordinate());
+			graph.addVertex();
+		}
+		return id;
+	}
+
+	private void addEdge(int u, int v, double weight) {
+		if (u == v)
+			return;
+		long key = u < v
+			? ((long) u << 32) | v
+			: ((long) v << 32) | u;
+		var edge = edges.get(key);
+		if (edge == null) {
+			edges.put(key, graph.addEdge(u, v, weight));
+		} else if (weight < graph.weight(edge)) {
+			graph.setWeight(edge, weight);
+		}
+	}
+
+	private static double lengthOf(Coordinate[] cs) {
+		double length = 0;
+		for (int i = 1; i < cs.length; i++) {
+			length += cs[i - 1].distance(cs[i]);
+		}
+		return length;
+	}
+
+	private record Segment(NodedSegmentString owner, int index, LineSegment seg) {
+	}
+}
@@ -9,6 +9,8 @@ import java.util.List;
 
 import org.citygml4j.core.model.core.CityModel;
 import org.citygml4j.xml.CityGMLContext;
+import org.citygml4j.xml.CityGMLContextException;
+import org.citygml4j.xml.reader.ChunkOptions;
 import org.citygml4j.xml.reader.CityGMLReadException;
 import org.citygml4j.xml.reader.CityGMLReader;
 import org.xmlobjects.gml.model.basictypes.Code;
@@ -56,6 +58,16 @@ class CityGML {
 		}
 	}
 
+	/// Creates a reader that returns the top-level city objects of a document
+	/// one by one instead of the complete city model.
+	static CityGMLReader chunkedReader(InputStream stream)
+		throws CityGMLContextException, CityGMLReadException {
+		return CityGMLContext.newInstance()
+			.createCityGMLInputFactory()
+			.withChunking(ChunkOptions.defaults())
+			.createCityGMLReader(stream);
+	}
+
 	private static Res<CityModel> findModel(CityGMLReader reader)
 		throws CityGMLReadException {
 		try (reader) {
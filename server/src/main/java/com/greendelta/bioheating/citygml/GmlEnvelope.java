@@ -1,7 +1,16 @@
 package com.greendelta.bioheating.citygml;
 
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.citygml4j.core.model.core.CityModel;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
@@ -35,10 +44,121 @@ public record GmlEnvelope(
 		));
 	}
 
+	/// Reads the envelope from the header of a CityGML document without
+	/// parsing the city objects. The reading stops at the first element that
+	/// is not part of the `boundedBy` element of the city model, thus only the
+	/// first few lines of a document are read.
+	static Optional<GmlEnvelope> scan(
+		InputStream stream, GeometryFactory factory
+	) throws XMLStreamException {
+		if (stream == null || factory == null)
+			return Optional.empty();
+		var xmlFactory = XMLInputFactory.newFactory();
+		xmlFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		var reader = xmlFactory.createXMLStreamReader(stream);
+		try {
+			int depth = 0;
+			boolean inBounds = false;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.END_ELEMENT) {
+					depth--;
+					inBounds = inBounds && depth >= 2;
+					continue;
+				}
+				if (event != XMLStreamConstants.START_ELEMENT)
+					continue;
+				depth++;
+				var name = reader.getLocalName();
+				if (depth == 2) {
+					if (name.endsWith("Member") || name.endsWith("Members"))
+						return Optional.empty();
+					inBounds = name.equals("boundedBy");
+				}
+				if (depth == 3 && inBounds && name.equals("Envelope"))
+					return Optional.of(readEnvelope(reader, factory));
+			}
+			return Optional.empty();
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static GmlEnvelope readEnvelope(
+		XMLStreamReader reader, GeometryFactory factory
+	) throws XMLStreamException {
+		var srs = attributeOf(reader, "srsName");
+		int dimension = intOf(attributeOf(reader, "srsDimension"));
+		Point lower = null;
+		Point upper = null;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT
+				&& reader.getLocalName().equals("Envelope"))
+				break;
+			if (event != XMLStreamConstants.START_ELEMENT)
+				continue;
+			var name = reader.getLocalName();
+			if (!name.equals("lowerCorner") && !name.equals("upperCorner"))
+				continue;
+			if (dimension == 0) {
+				dimension = intOf(attributeOf(reader, "srsDimension"));
+			}
+			var values = valuesOf(reader.getElementText());
+			if (dimension == 0) {
+				dimension = values.size();
+			}
+			var point = pointOf(values, factory);
+			if (name.equals("lowerCorner")) {
+				lower = point;
+			} else {
+				upper = point;
+			}
+		}
+		return new GmlEnvelope(srs, dimension, lower, upper);
+	}
+
+	private static String attributeOf(XMLStreamReader reader, String name) {
+		var value = reader.getAttributeValue(XMLConstants.NULL_NS_URI, name);
+		return value != null
+			? value
+			: reader.getAttributeValue(null, name);
+	}
+
+	private static int intOf(String s) {
+		if (s == null)
+			return 0;
+		try {
+			return Integer.parseInt(s.strip());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static List<Double> valuesOf(String text) {
+		var values = new ArrayList<Double>();
+		if (text == null)
+			return values;
+		for (var part : text.strip().split("\\s+")) {
+			if (part.isEmpty())
+				continue;
+			try {
+				values.add(Double.parseDouble(part));
+			} catch (NumberFormatException e) {
+				values.add(null);
+			}
+		}
+		return values;
+	}
+
 	private static Point pointOf(DirectPosition pos, GeometryFactory factory) {
 		if (pos == null || factory == null)
 			return null;
-		var coos = pos.getValue();
+		return pointOf(pos.getValue(), factory);
+	}
+
+	private static Point pointOf(List<Double> coos, GeometryFactory factory) {
 		if (coos == null || coos.size() < 2)
 			return null;
 		var x = coos.getFirst();
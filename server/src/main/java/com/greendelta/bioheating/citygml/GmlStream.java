@@ -0,0 +1,69 @@
+package com.greendelta.bioheating.citygml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.function.Consumer;
+
+import org.citygml4j.core.model.building.Building;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import com.greendelta.bioheating.util.Res;
+
+/// Reads the buildings of a CityGML file one by one, without loading the
+/// complete city model into memory. The envelope of the model is read from
+/// the header of the file when the stream is opened, so that it is known
+/// before the first building is read.
+public final class GmlStream {
+
+	private final File file;
+	private final GmlEnvelope envelope;
+	private final GeometryFactory factory;
+
+	private GmlStream(File file, GmlEnvelope envelope, GeometryFactory factory) {
+		this.file = file;
+		this.envelope = envelope;
+		this.factory = factory;
+	}
+
+	public static Res<GmlStream> open(File file) {
+		if (file == null || !file.exists())
+			return Res.error("file does not exist");
+		var factory = new GeometryFactory();
+		try (var stream = new FileInputStream(file);
+				 var buffer = new BufferedInputStream(stream)) {
+			var envelope = GmlEnvelope.scan(buffer, factory).orElse(null);
+			return Res.of(new GmlStream(file, envelope, factory));
+		} catch (Exception e) {
+			return Res.error("failed to read header of " + file.getName(), e);
+		}
+	}
+
+	/// Returns the envelope of the city model, or `null` if the model has no
+	/// envelope in its header.
+	public GmlEnvelope envelope() {
+		return envelope;
+	}
+
+	/// Reads the buildings of the file and passes them one by one to the given
+	/// consumer. Returns the number of buildings that were read.
+	public Res<Integer> forEach(Consumer<GmlBuilding> fn) {
+		if (fn == null)
+			return Res.error("no consumer provided");
+		int count = 0;
+		try (var stream = new FileInputStream(file);
+				 var buffer = new BufferedInputStream(stream);
+				 var reader = CityGML.chunkedReader(buffer)) {
+			var gsr = new GroundSurfaceReader(factory);
+			while (reader.hasNext()) {
+				if (reader.next() instanceof Building b) {
+					fn.accept(GmlBuilding.of(b, gsr));
+					count++;
+				}
+			}
+			return Res.of(count);
+		} catch (Exception e) {
+			return Res.error("failed to read buildings from " + file.getName(), e);
+		}
+	}
+}
@@ -4,12 +4,15 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import com.greendelta.bioheating.calc.CalcPool;
+
 @Configuration
 @EnableAsync
 @EnableScheduling
@@ -39,4 +42,13 @@ public class AsyncConfig implements AsyncConfigurer {
 		exec.initialize();
 		return exec;
 	}
+
+	/// The pool for parallel calculations, e.g. the connector search of a
+	/// solution.
+	@Bean(destroyMethod = "close")
+	public CalcPool calcPool(
+		@Value("${bioheating.calc.parallelism:0}") int parallelism
+	) {
+		return CalcPool.of(parallelism);
+	}
 }
@@ -1,13 +1,20 @@
 package com.greendelta.bioheating.controllers;
 
 import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Polygon;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -15,13 +22,22 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.greendelta.bioheating.io.sophena.SophenaExport;
 import com.greendelta.bioheating.model.ClimateRegion;
 import com.greendelta.bioheating.model.Database;
 import com.greendelta.bioheating.model.Fuel;
+import com.greendelta.bioheating.model.Inclusion;
 import com.greendelta.bioheating.model.Project;
 import com.greendelta.bioheating.model.client.ClientProject;
+import com.greendelta.bioheating.model.client.FeatureIndex;
+import com.greendelta.bioheating.model.client.FeaturePatch;
+import com.greendelta.bioheating.model.client.Geometry.GeoPolygon;
+import com.greendelta.bioheating.model.client.ProjectInfo;
+import com.greendelta.bioheating.model.client.VectorTile;
 import com.greendelta.bioheating.services.FileService;
 import com.greendelta.bioheating.services.ProjectService;
 import com.greendelta.bioheating.services.TaskService;
@@ -35,24 +51,29 @@ import com.greendelta.bioheating.util.Strings;
 @RequestMapping("/api/projects")
 public class ProjectController {
 
+	private static final int MAX_PAGE_SIZE = 10_000;
+
 	private final Database db;
 	private final ProjectService projects;
 	private final UserService users;
 	private final FileService files;
 	private final TaskService tasks;
+	private final ObjectMapper json;
 
 	public ProjectController(
 		Database db,
 		ProjectService projects,
 		UserService users,
 		FileService files,
-		TaskService tasks
+		TaskService tasks,
+		ObjectMapper json
 	) {
 		this.db = db;
 		this.projects = projects;
 		this.users = users;
 		this.files = files;
 		this.tasks = tasks;
+		this.json = json;
 	}
 
 	@GetMapping
@@ -60,21 +81,22 @@ public class ProjectController {
 		var user = users.getCurrentUser(auth).orElse(null);
 		if (user == null)
 			return Http.badRequest("not authenticated");
-		var data = projects.getProjects(user).stream()
-			.map(ProjectInfo::of)
-			.toList();
-		return Http.ok(data);
+		return Http.ok(projects.getProjects(user));
 	}
 
 	@GetMapping("/{id}")
 	public ResponseEntity<?> getProject(
 		Authentication auth, @PathVariable long id
 	) {
-		return withProject(auth, id, project -> {
-			var res = ClientProject.of(project);
-			return res.hasError()
-				? Http.serverError("failed to convert project: " + res.error())
-				: Http.ok(res.value());
+		return withFullProject(auth, id, project -> {
+			var res = projects.getWriter(project, json);
+			if (res.hasError())
+				return Http.serverError("failed to convert project: " + res.error());
+			var writer = res.value();
+			StreamingResponseBody body = writer::writeTo;
+			return ResponseEntity.ok()
+				.contentType(MediaType.APPLICATION_JSON)
+				.body(body);
 		});
 	}
 
@@ -82,7 +104,7 @@ public class ProjectController {
 	public ResponseEntity<?> getSophenaPackage(
 		Authentication auth, @PathVariable long id
 	) {
-		return withProject(auth, id, project -> {
+		return withFullProject(auth, id, project -> {
 			Res<byte[]> bytes = files.withTempFile(".zip", file -> {
 				var res = SophenaExport.write(project, file);
 				if (res.hasError())
@@ -107,6 +129,101 @@ public class ProjectController {
 		});
 	}
 
+	/// Returns a page of the map features that intersect the given bounding
+	/// box (`minLon,minLat,maxLon,maxLat` in WGS 84). The `next` value of a
+	/// page is passed as cursor to get the following page.
+	@GetMapping("/{id}/features")
+	public ResponseEntity<?> getFeatures(
+		Authentication auth,
+		@PathVariable long id,
+		@RequestParam(name = "bbox", required = false) String bbox,
+		@RequestParam(name = "limit", defaultValue = "1000") int limit,
+		@RequestParam(name = "cursor", defaultValue = "0") long cursor
+	) {
+		if (limit < 1 || limit > MAX_PAGE_SIZE)
+			return Http.badRequest(
+				"limit must be between 1 and " + MAX_PAGE_SIZE);
+		Envelope env = null;
+		if (Strings.isNotNil(bbox)) {
+			var parsed = FeatureIndex.parseBBox(bbox);
+			if (parsed.hasError())
+				return Http.badRequest(parsed.error());
+			env = parsed.value();
+		}
+		var query = env;
+		return withProjectAt(auth, id, (project, version) -> {
+			var res = projects.getFeatures(project, version, query, cursor, limit);
+			return res.hasError()
+				? Http.serverError("failed to get features: " + res.error())
+				: Http.ok(res.value());
+		});
+	}
+
+	/// Updates only the given properties of the given map features, e.g.
+	/// `[{"@type": "building", "id": 42, "inclusion": "EXCLUDED"}]`, and
+	/// returns the number of updated features.
+	@PatchMapping("/{id}/features")
+	public ResponseEntity<?> patchFeatures(
+		Authentication auth,
+		@PathVariable long id,
+		@RequestBody List<Map<String, Object>> changes
+	) {
+		var patch = FeaturePatch.of(changes);
+		if (patch.hasError())
+			return Http.badRequest(patch.error());
+		var fuels = patch.value().checkFuels(db);
+		if (fuels.hasError())
+			return Http.badRequest(fuels.error());
+		return withProject(auth, id, project -> {
+			var res = projects.patchFeatures(project, patch.value());
+			return res.hasError()
+				? Http.serverError("failed to update features: " + res.error())
+				: Http.ok(res.value());
+		});
+	}
+
+	/// Sets the inclusion of all map features that intersect the given area
+	/// in WGS 84: a GeoJSON polygon or a bounding box in the format
+	/// `minLon,minLat,maxLon,maxLat`. Returns the number of updated features.
+	@PatchMapping("/{id}/features/inclusion")
+	public ResponseEntity<?> setInclusion(
+		Authentication auth, @PathVariable long id, @RequestBody InclusionData data
+	) {
+		if (data == null || data.inclusion() == null)
+			return Http.badRequest("no inclusion provided");
+		var area = data.area();
+		if (area.hasError())
+			return Http.badRequest(area.error());
+		return withProjectAt(auth, id, (project, version) -> {
+			var res = projects.setInclusion(
+				project, version, area.value(), data.inclusion());
+			return res.hasError()
+				? Http.serverError("failed to update inclusions: " + res.error())
+				: Http.ok(res.value());
+		});
+	}
+
+	@GetMapping("/{id}/tiles/{z}/{x}/{y}.mvt")
+	public ResponseEntity<?> getTile(
+		Authentication auth,
+		@PathVariable long id,
+		@PathVariable int z,
+		@PathVariable int x,
+		@PathVariable int y
+	) {
+		if (z < 0 || z > VectorTile.MAX_ZOOM
+			|| x < 0 || y < 0 || x >= (1 << z) || y >= (1 << z))
+			return Http.badRequest("invalid tile: " + z + "/" + x + "/" + y);
+		return withProjectAt(auth, id, (project, version) -> {
+			var res = projects.getTile(project, version, z, x, y);
+			return res.hasError()
+				? Http.serverError("failed to create tile: " + res.error())
+				: ResponseEntity.ok()
+					.header(HttpHeaders.CONTENT_TYPE, VectorTile.CONTENT_TYPE)
+					.body(res.value());
+		});
+	}
+
 	@PostMapping
 	public ResponseEntity<?> createProject(
 		Authentication auth,
@@ -164,7 +281,7 @@ public class ProjectController {
 	public ResponseEntity<?> updateProject(
 		Authentication auth, @PathVariable long id, @RequestBody ClientProject data
 	) {
-		return withProject(auth, id, project -> {
+		return withFullProject(auth, id, project -> {
 			data.writeUpdatesTo(db, project);
 			var res = projects.updateProject(project);
 			return res.hasError()
@@ -173,27 +290,61 @@ public class ProjectController {
 		});
 	}
 
+	public record InclusionData(
+		Inclusion inclusion, String bbox, GeoPolygon polygon
+	) {
+
+		Res<Polygon> area() {
+			if (polygon != null)
+				return FeatureIndex.areaOf(polygon.coordinates());
+			if (Strings.isNil(bbox))
+				return Res.error("no polygon or bounding box provided");
+			var env = FeatureIndex.parseBBox(bbox);
+			return env.hasError()
+				? env.castError()
+				: FeatureIndex.areaOf(env.value());
+		}
+	}
+
+	/// Calls the given function with the header of the project; the map
+	/// features are loaded on demand.
 	private ResponseEntity<?> withProject(
 		Authentication auth, long id, Function<Project, ResponseEntity<?>> fn
+	) {
+		return withProject(auth, id, false, fn);
+	}
+
+	/// Calls the given function with the header of the project and the
+	/// version of the cached map data that was read before the project was
+	/// loaded, see [ProjectService#mapVersion].
+	private ResponseEntity<?> withProjectAt(
+		Authentication auth, long id,
+		BiFunction<Project, Long, ResponseEntity<?>> fn
+	) {
+		long version = projects.mapVersion();
+		return withProject(auth, id, false, project -> fn.apply(project, version));
+	}
+
+	/// Calls the given function with the project and its complete map.
+	private ResponseEntity<?> withFullProject(
+		Authentication auth, long id, Function<Project, ResponseEntity<?>> fn
+	) {
+		return withProject(auth, id, true, fn);
+	}
+
+	private ResponseEntity<?> withProject(
+		Authentication auth, long id, boolean withMap,
+		Function<Project, ResponseEntity<?>> fn
 	) {
 		var user = users.getCurrentUser(auth).orElse(null);
 		if (user == null)
 			return Http.badRequest("not authenticated");
-		var project = projects.getProject(user, id).orElse(null);
+		var project = withMap
+			? projects.getProjectWithMap(user, id).orElse(null)
+			: projects.getProject(user, id).orElse(null);
 		return project == null
 			? Http.notFound("project not found: " + id)
 			: fn.apply(project);
 	}
 
-	public record ProjectInfo(
-		long id, String name, String description
-	) {
-
-		public static ProjectInfo of(Project p) {
-			return new ProjectInfo(
-				p.id(), p.name(), p.description()
-			);
-		}
-	}
-
 }
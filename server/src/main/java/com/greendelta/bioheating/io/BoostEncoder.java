@@ -4,33 +4,36 @@ import java.util.List;
 
 import com.greendelta.bioheating.model.Building;
 
-import ml.dmlc.xgboost4j.java.DMatrix;
-
 class BoostEncoder {
 
-	private static final int PARAMS = 5;
-
-	static DMatrix encodeBuildingData(List<Building> items) {
-		try {
-			var data = new float[items.size() * PARAMS];
-			for (var i = 0; i < items.size(); i++) {
-				var item = items.get(i);
-				System.arraycopy(encode(item), 0, data, i * PARAMS, PARAMS);
-			}
-			return new DMatrix(data, items.size(), 5, Float.NaN);
-		} catch (Exception e) {
-			throw new RuntimeException("failed to encode building data", e);
+	/// The number of features per building.
+	static final int PARAMS = 5;
+
+	/// Encodes the buildings `from .. to-1` of the given list into the rows of
+	/// the given row-major buffer, starting at its first row. The buffer must
+	/// have space for `to - from` rows.
+	static void encodeInto(
+		List<Building> items, int from, int to, float[] buffer
+	) {
+		for (int i = from; i < to; i++) {
+			encodeInto(items.get(i), buffer, (i - from) * PARAMS);
 		}
 	}
 
 	static float[] encode(Building b) {
-		return new float[] {
-			(float) b.height(),
-			(float) b.storeys(),
-			encodeClimateZone(b.climateZone()),
-			(float) b.volume(),
-			(float) b.heatedArea(),
-		};
+		var row = new float[PARAMS];
+		encodeInto(b, row, 0);
+		return row;
+	}
+
+	/// Writes the features of the building into the given buffer, starting at
+	/// the given offset.
+	static void encodeInto(Building b, float[] buffer, int offset) {
+		buffer[offset] = (float) b.height();
+		buffer[offset + 1] = (float) b.storeys();
+		buffer[offset + 2] = encodeClimateZone(b.climateZone());
+		buffer[offset + 3] = (float) b.volume();
+		buffer[offset + 4] = (float) b.heatedArea();
 	}
 
 	private static float encodeClimateZone(int zone) {
@@ -1,60 +1,78 @@
 package com.greendelta.bioheating.io;
 
-import java.util.List;
+import java.io.InputStream;
 
 import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.util.Res;
 
 import ml.dmlc.xgboost4j.java.Booster;
 import ml.dmlc.xgboost4j.java.DMatrix;
 import ml.dmlc.xgboost4j.java.XGBoost;
 
-public record BoostPredictor(Booster booster) {
+/// Predicts the heat demands with the native XGBoost library.
+public record BoostPredictor(Booster booster) implements HeatPredictor {
 
 	public static BoostPredictor getDefault() {
 		var stream = BoostPredictor.class.getResourceAsStream("model.json");
 		if (stream == null)
 			throw new RuntimeException("default model not found");
 		try (stream) {
-			var booster = XGBoost.loadModel(stream);
-			return new BoostPredictor(booster);
+			return read(stream).orElseThrow();
 		} catch (Exception e) {
 			throw new RuntimeException("failed to load default model", e);
 		}
 	}
 
+	public static Res<BoostPredictor> read(InputStream stream) {
+		if (stream == null)
+			return Res.error("no model stream provided");
+		try {
+			var booster = XGBoost.loadModel(stream);
+			return Res.of(new BoostPredictor(booster));
+		} catch (Exception e) {
+			return Res.error("failed to load model", e);
+		}
+	}
+
+	@Override
 	public float predict(Building b) {
 		return b != null
 			? predictOne(BoostEncoder.encode(b))
 			: 0;
 	}
 
-	public float[] predictAll(List<Building> bs) {
-		if (bs == null || bs.isEmpty())
-			return new float[0];
-		var data = BoostEncoder.encodeBuildingData(bs);
-		return predictAll(data);
-	}
-
 	private float predictOne(float[] data) {
+		DMatrix matrix = null;
 		try {
-			var matrix = new DMatrix(data, 1, data.length, Float.NaN);
+			matrix = new DMatrix(data, 1, data.length, Float.NaN);
 			var predictions = booster.predict(matrix);
 			return predictions[0][0];
 		} catch (Exception e) {
 			throw new RuntimeException("failed to predict value", e);
+		} finally {
+			if (matrix != null) {
+				matrix.dispose();
+			}
 		}
 	}
 
-	private float[] predictAll(DMatrix matrix) {
+	@Override
+	public void predictRows(float[] buffer, int rows, float[] out, int offset) {
+		if (rows == 0)
+			return;
+		DMatrix matrix = null;
 		try {
+			matrix = new DMatrix(buffer, rows, BoostEncoder.PARAMS, Float.NaN);
 			var predictions = booster.predict(matrix);
-			var ret = new float[predictions.length];
-			for (int i = 0; i < predictions.length; i++) {
-				ret[i] = predictions[i][0];
+			for (int i = 0; i < rows; i++) {
+				out[offset + i] = predictions[i][0];
 			}
-			return ret;
 		} catch (Exception e) {
 			throw new RuntimeException("failed to predict values", e);
+		} finally {
+			if (matrix != null) {
+				matrix.dispose();
+			}
 		}
 	}
 
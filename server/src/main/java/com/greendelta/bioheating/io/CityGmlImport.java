@@ -1,29 +1,60 @@
 package com.greendelta.bioheating.io;
 
 import java.io.File;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 
 import com.greendelta.bioheating.citygml.GmlAddress;
 import com.greendelta.bioheating.citygml.GmlBuilding;
-import com.greendelta.bioheating.citygml.GmlModel;
+import com.greendelta.bioheating.citygml.GmlEnvelope;
+import com.greendelta.bioheating.citygml.GmlStream;
 import com.greendelta.bioheating.model.Building;
 import com.greendelta.bioheating.model.Database;
 import com.greendelta.bioheating.model.GeoMap;
 import com.greendelta.bioheating.model.Inclusion;
 import com.greendelta.bioheating.model.Project;
+import com.greendelta.bioheating.model.Street;
 import com.greendelta.bioheating.util.Res;
 import com.greendelta.bioheating.util.Strings;
 
+/// Imports the buildings of a CityGML file into the map of a project. The
+/// import runs as a pipeline of stages that are connected by bounded queues:
+///
+/// 1. parse: the buildings are read one by one from the file
+/// 2. convert: the buildings are converted into entities by a configurable
+///    number of workers
+/// 3. predict: the converted buildings are collected in the order of the
+///    file and their heat demands are predicted in batches (in the calling
+///    thread)
+/// 4. persist: each batch is written directly into the map of the project
+///    with a [com.greendelta.bioheating.model.BulkWriter], after its heat
+///    demands were predicted in the same thread; the writer holds one
+///    connection and transaction, which cannot be shared between threads
+///
+/// The OSM streets are fetched concurrently to these stages, as soon as the
+/// envelope of the model is known. Neither the city model nor the imported
+/// buildings are held in memory as a whole; at most a few batches are in
+/// flight at a time. Everything is written in one transaction, so a failed
+/// import leaves the project unchanged. The first three stages are run by an
+/// [ImportPipeline].
 public class CityGmlImport implements Callable<Res<Project>> {
 
 	private final Database db;
 	private final Project project;
 	private final File file;
-	private final Mappings mappings;
-	private final BoostPredictor booster;
+	private ModelRegistry models;
+	private Mappings mappings;
+	private HeatPredictor booster;
 	private boolean withOsmImport = false;
+	private int batchSize = 1000;
+	private int queueSize = 1000;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
 
 	public CityGmlImport(
 		Database db, Project project, File file
@@ -31,8 +62,6 @@ public class CityGmlImport implements Callable<Res<Project>> {
 		this.db = db;
 		this.project = project;
 		this.file = file;
-		this.mappings = Mappings.read().orElse(null);
-		this.booster = BoostPredictor.getDefault();
 	}
 
 	public CityGmlImport withOsmImport(boolean b) {
@@ -40,57 +69,152 @@ public class CityGmlImport implements Callable<Res<Project>> {
 		return this;
 	}
 
+	/// Sets the registry from which the mapping tables and the default
+	/// predictor are taken; by default, the shared registry with the bundled
+	/// models is used.
+	public CityGmlImport withModels(ModelRegistry models) {
+		this.models = models;
+		return this;
+	}
+
+	/// Sets the predictor of the heat demands; by default, the native XGBoost
+	/// predictor of the model registry is used.
+	public CityGmlImport withPredictor(HeatPredictor predictor) {
+		this.booster = predictor;
+		return this;
+	}
+
+	/// Sets the number of buildings for which the heat demands are predicted
+	/// together.
+	public CityGmlImport withBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+		return this;
+	}
+
+	/// Sets the capacity of the queues between the stages of the import.
+	public CityGmlImport withQueueSize(int queueSize) {
+		this.queueSize = Math.max(1, queueSize);
+		return this;
+	}
+
+	/// Sets the number of workers that convert the buildings; a value <= 0
+	/// means the number of available processors.
+	public CityGmlImport withParallelism(int parallelism) {
+		this.parallelism = parallelism > 0
+			? parallelism
+			: Runtime.getRuntime().availableProcessors();
+		return this;
+	}
+
 	@Override
 	public Res<Project> call() {
 		if (project == null)
 			return Res.error("project cannot be null");
 		if (file == null || !file.exists())
 			return Res.error("file does not exist");
-		if (mappings == null)
-			return Res.error("failed to load mappings");
+		if (models == null) {
+			models = ModelRegistry.getDefault();
+		}
+		var mappingsRes = models.mappings();
+		if (mappingsRes.hasError())
+			return mappingsRes.wrapError("failed to load mappings");
+		mappings = mappingsRes.value();
+		if (booster == null) {
+			var predictorRes = models.predictor(ModelRegistry.Engine.XGBOOST);
+			if (predictorRes.hasError())
+				return predictorRes.wrapError("failed to load heat demand model");
+			booster = predictorRes.value();
+		}
 
-		var res = GmlModel.readFrom(file);
+		var res = GmlStream.open(file);
 		if (res.hasError())
 			return res.castError();
-		var model = res.value();
-		var mapRes = initMap(model);
+		var stream = res.value();
+		var mapRes = initMap(stream.envelope());
 		if (mapRes.hasError())
 			return mapRes.castError();
 		var map = mapRes.value();
 
-		for (var b : model.buildings()) {
-			var building = convertBuilding(b);
-			if (building != null) {
-				building.fuel(project.defaultFuel());
-				map.buildings().add(building);
-			}
-		}
+		var exec = Executors.newFixedThreadPool(
+			parallelism + 2,
+			Thread.ofPlatform().name("gml-import-", 0).daemon().factory());
+		Project saved;
+		try (var writer = db.openBulk(project)) {
+			var streets = fetchStreets(exec, stream.envelope(), map.crs());
+
+			var bounds = new Envelope();
+			var pipeline = new ImportPipeline<GmlBuilding>(
+				this::convertBuilding,
+				batch -> {
+					predictHeatDemands(batch);
+					writer.writeBuildings(batch);
+					expand(bounds, batch);
+				})
+				.withParallelism(parallelism)
+				.withQueueSize(queueSize)
+				.withBatchSize(batchSize);
+			var pipelineRes = pipeline.run(exec, stream::forEach);
+			if (pipelineRes.hasError())
+				return pipelineRes.castError();
 
-		try {
-			var buildings = map.buildings();
-			var demands = booster.predictAll(buildings);
-			for (int i = 0; i < demands.length; i++) {
-				buildings.get(i).heatDemand(demands[i]);
+			if (streets == null && withOsmImport && !bounds.isNull()) {
+				streets = exec.submit(() -> OsmStreetFetch.fetch(map.crs(), bounds));
 			}
+			if (streets != null) {
+				var streetRes = streets.get();
+				if (streetRes.hasError())
+					return streetRes.wrapError("OSM import failed");
+				writer.writeStreets(streetRes.value());
+			}
+			saved = writer.commit();
 		} catch (Exception e) {
-			return Res.error("failed to predict heat demands", e);
+			return Res.error("failed to import buildings", e);
+		} finally {
+			exec.shutdownNow();
 		}
 
-		if (withOsmImport) {
-			var err = OsmStreetFetch.into(map);
-			if (err.hasError())
-				return err.wrapError("OSM import failed");
-		}
+		// the buildings were streamed into the database; they are loaded
+		// lazily with the project
+		var loaded = db.getForId(Project.class, saved.id());
+		return loaded != null
+			? Res.of(loaded)
+			: Res.error("failed to load imported project");
+	}
+
+	/// Starts the OSM import when the envelope of the model is known. Returns
+	/// `null` when it is not started; then, the streets are fetched for the
+	/// bounds of the imported buildings.
+	private Future<Res<List<Street>>> fetchStreets(
+		ExecutorService exec, GmlEnvelope env, String crs
+	) {
+		if (!withOsmImport || env.lowerCorner() == null || env.upperCorner() == null)
+			return null;
+		var bounds = new Envelope(
+			env.lowerCorner().getCoordinate(), env.upperCorner().getCoordinate());
+		return exec.submit(() -> OsmStreetFetch.fetch(crs, bounds));
+	}
 
-		var next = project.id() == 0
-			? db.insert(project)
-			: db.update(project);
-		return Res.of(next);
+	private void expand(Envelope bounds, List<Building> batch) {
+		for (var b : batch) {
+			var cs = b.coordinates();
+			if (cs == null)
+				continue;
+			for (var c : cs) {
+				bounds.expandToInclude(c.x, c.y);
+			}
+		}
 	}
 
-	private Res<GeoMap> initMap(GmlModel model) {
+	private void predictHeatDemands(List<Building> batch) {
+		if (batch.isEmpty())
+			return;
+		var demands = booster.predictAll(batch);
+		for (int i = 0; i < demands.length; i++) {
+			batch.get(i).heatDemand(demands[i]);
+		}
+	}
 
-		var env = model.envelope();
+	private Res<GeoMap> initMap(GmlEnvelope env) {
 		if (env == null || Strings.isNil(env.srs()))
 			return Res.error("no CRS defined for model");
 
@@ -136,7 +260,8 @@ public class CityGmlImport implements Callable<Res<Project>> {
 			.volume(volume)
 			.climateZone(climateZoneOf(b))
 			.isHeated(b.address() != null)
-			.inclusion(Inclusion.EXCLUDED);
+			.inclusion(Inclusion.EXCLUDED)
+			.fuel(project.defaultFuel());
 		mapAddress(b.address(), building);
 		return building;
 	}
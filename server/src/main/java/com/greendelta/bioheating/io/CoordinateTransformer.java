@@ -1,6 +1,7 @@
 package com.greendelta.bioheating.io;
 
-import java.util.Objects;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.proj4j.CRSFactory;
@@ -13,13 +14,38 @@ import com.greendelta.bioheating.model.GeoMap;
 import com.greendelta.bioheating.util.Res;
 import com.greendelta.bioheating.util.Strings;
 
-
+/// Transforms coordinates between two coordinate reference systems. The
+/// transformers are cached per pair of CRS IDs, so that the CRS definitions
+/// are parsed only once. A transformer can be shared between threads: as the
+/// Proj4j transforms have internal state, each thread gets its own transform
+/// instance that is created from the parsed CRS parameters.
 public class CoordinateTransformer {
 
-	private final CoordinateTransform fn;
+	private static final int CACHE_SIZE = 32;
+	private static final Map<Key, CoordinateTransformer> cache =
+		new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+				Map.Entry<Key, CoordinateTransformer> e
+			) {
+				return size() > CACHE_SIZE;
+			}
+		};
+
+	private final ThreadLocal<State> state;
 
-	private CoordinateTransformer(CoordinateTransform fn) {
-		this.fn = Objects.requireNonNull(fn);
+	private CoordinateTransformer(
+		CoordinateReferenceSystem source, CoordinateReferenceSystem target
+	) {
+		var sourceParams = source.getParameters();
+		var targetParams = target.getParameters();
+		this.state = ThreadLocal.withInitial(() -> {
+			var crs = new CRSFactory();
+			var fn = new CoordinateTransformFactory().createTransform(
+				crs.createFromParameters(source.getName(), sourceParams),
+				crs.createFromParameters(target.getName(), targetParams));
+			return new State(fn, new ProjCoordinate(), new ProjCoordinate());
+		});
 	}
 
 	public static Res<CoordinateTransformer> toWgs84From(GeoMap map) {
@@ -43,6 +69,15 @@ public class CoordinateTransformer {
 	}
 
 	public static Res<CoordinateTransformer> of(CrsId sourceId, CrsId targetId) {
+		if (sourceId == null || targetId == null)
+			return Res.error("CRS ID is null");
+		var key = new Key(sourceId, targetId);
+		synchronized (cache) {
+			var cached = cache.get(key);
+			if (cached != null)
+				return Res.of(cached);
+		}
+
 		var factory = new CRSFactory();
 		var source = crsOf(sourceId, factory);
 		if (source.hasError())
@@ -50,9 +85,11 @@ public class CoordinateTransformer {
 		var target = crsOf(targetId, factory);
 		if (target.hasError())
 			return target.wrapError("failed to create target CRS");
-		var transform = new CoordinateTransformFactory()
-			.createTransform(source.value(), target.value());
-		return Res.of(new CoordinateTransformer(transform));
+		var transformer = new CoordinateTransformer(source.value(), target.value());
+		synchronized (cache) {
+			var cached = cache.putIfAbsent(key, transformer);
+			return Res.of(cached != null ? cached : transformer);
+		}
 	}
 
 	private static Res<CoordinateReferenceSystem> crsOf(
@@ -69,41 +106,81 @@ public class CoordinateTransformer {
 	}
 
 	public Res<Coordinate[]> transform(Coordinate[] origin) {
-		var res = project(origin);
-		if (res.hasError())
-			return res.castError();
-		var pcs = res.value();
-		var cs = new Coordinate[pcs.length];
-		for (int i = 0; i < pcs.length; i++) {
-			var pci = pcs[i];
-			cs[i] = new Coordinate(pci.x, pci.y);
+		if (origin == null || origin.length == 0)
+			return Res.error("no coordinates provided");
+		var xy = xyOf(origin, null);
+		var err = transform(xy);
+		if (err.hasError())
+			return err.castError();
+		var cs = new Coordinate[origin.length];
+		for (int i = 0; i < cs.length; i++) {
+			cs[i] = new Coordinate(xy[2 * i], xy[2 * i + 1]);
 		}
 		return Res.of(cs);
 	}
 
-	private Res<ProjCoordinate[]> project(Coordinate[] cs) {
-		if (cs == null || cs.length == 0)
+	/// Transforms the packed coordinates `[x0, y0, x1, y1, ...]` in place.
+	public Res<Void> transform(double[] xy) {
+		return xy != null
+			? transform(xy, xy.length / 2, xy)
+			: Res.error("no coordinates provided");
+	}
+
+	/// Transforms the first `n` points of the packed coordinates
+	/// `[x0, y0, x1, y1, ...]` into the given output buffer, which can be the
+	/// same array as the input. No objects are allocated per point.
+	public Res<Void> transform(double[] xy, int n, double[] out) {
+		if (xy == null || out == null || n < 0)
 			return Res.error("no coordinates provided");
+		if (2 * n > xy.length || 2 * n > out.length)
+			return Res.error("coordinate buffer too small for " + n + " points");
+		var s = state.get();
 		try {
-			var pcs = new ProjCoordinate[cs.length];
-			for (int i = 0; i < cs.length; i++) {
-				// Proj4j can handle in-place transformations (?)
-				pcs[i] = new ProjCoordinate(cs[i].x, cs[i].y);
-				fn.transform(pcs[i], pcs[i]);
+			for (int i = 0; i < 2 * n; i += 2) {
+				s.source.x = xy[i];
+				s.source.y = xy[i + 1];
+				s.source.z = Double.NaN;
+				s.fn.transform(s.source, s.target);
+				out[i] = s.target.x;
+				out[i + 1] = s.target.y;
 			}
-			return Res.of(pcs);
+			return Res.VOID;
 		} catch (Exception e) {
 			return Res.error("coordinate transform failed", e);
 		}
 	}
 
+	/// Packs the x- and y-values of the coordinates into the given buffer as
+	/// `[x0, y0, x1, y1, ...]`. A new buffer is allocated when the given
+	/// buffer is `null` or too small.
+	public static double[] xyOf(Coordinate[] cs, double[] buffer) {
+		int n = cs != null ? cs.length : 0;
+		var xy = buffer != null && buffer.length >= 2 * n
+			? buffer
+			: new double[2 * n];
+		for (int i = 0; i < n; i++) {
+			xy[2 * i] = cs[i].x;
+			xy[2 * i + 1] = cs[i].y;
+		}
+		return xy;
+	}
+
 	public Res<ProjCoordinate> project(double x, double y) {
 		try {
 			var pc = new ProjCoordinate(x, y);
-			fn.transform(pc, pc);
+			state.get().fn.transform(pc, pc);
 			return Res.of(pc);
 		} catch (Exception e) {
 			return Res.error("coordinate transform failed", e);
 		}
 	}
+
+	private record Key(CrsId source, CrsId target) {
+	}
+
+	/// The transform of a thread with reusable points for bulk transforms.
+	private record State(
+		CoordinateTransform fn, ProjCoordinate source, ProjCoordinate target
+	) {
+	}
 }
@@ -0,0 +1,38 @@
+package com.greendelta.bioheating.io;
+
+import java.util.List;
+
+import com.greendelta.bioheating.model.Building;
+
+/// Predicts the heat demands of buildings from the features that are encoded
+/// by the [BoostEncoder].
+public sealed interface HeatPredictor permits BoostPredictor, TreeEnsemble {
+
+	/// The maximum number of buildings that are encoded and predicted together
+	/// in [#predictAll(List)].
+	int CHUNK_SIZE = 4096;
+
+	float predict(Building b);
+
+	/// Predicts the values of the first `rows` rows of the given row-major
+	/// buffer and writes them into the output array, starting at the given
+	/// offset. The rows have the width [BoostEncoder#PARAMS].
+	void predictRows(float[] buffer, int rows, float[] out, int offset);
+
+	/// Predicts the heat demands of the given buildings. The buildings are
+	/// encoded and predicted in chunks, so that only a small, reused buffer is
+	/// needed also for large lists.
+	default float[] predictAll(List<Building> bs) {
+		if (bs == null || bs.isEmpty())
+			return new float[0];
+		int n = bs.size();
+		var out = new float[n];
+		var buffer = new float[Math.min(n, CHUNK_SIZE) * BoostEncoder.PARAMS];
+		for (int from = 0; from < n; from += CHUNK_SIZE) {
+			int to = Math.min(n, from + CHUNK_SIZE);
+			BoostEncoder.encodeInto(bs, from, to, buffer);
+			predictRows(buffer, to - from, out, from);
+		}
+		return out;
+	}
+}
@@ -0,0 +1,236 @@
+package com.greendelta.bioheating.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.util.Res;
+
+/// Runs the stages of an import, independent of the format of the source:
+///
+/// 1. read: the items are read from the source and put into a queue
+/// 2. convert: the items are converted into buildings by a number of workers
+/// 3. consume: the buildings are passed in batches, in the order of the
+///    source, to a consumer (in the calling thread)
+///
+/// Items for which the converter returns `null` are skipped. When a stage
+/// fails, the other stages are stopped and the error is returned.
+///
+/// The number of items in the pipeline is limited by the queue size: the
+/// reader takes a permit for each item, which is released when the item
+/// leaves the consume stage. Thus, when a slow item holds back the items
+/// after it, the reader stops instead of filling the reorder buffer of the
+/// consumer.
+final class ImportPipeline<T> {
+
+	private final Function<T, Building> converter;
+	private final Consumer<List<Building>> consumer;
+	private int parallelism = 1;
+	private int queueSize = 1000;
+	private int batchSize = 1000;
+
+	ImportPipeline(
+		Function<T, Building> converter, Consumer<List<Building>> consumer
+	) {
+		this.converter = converter;
+		this.consumer = consumer;
+	}
+
+	ImportPipeline<T> withParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		return this;
+	}
+
+	ImportPipeline<T> withQueueSize(int queueSize) {
+		this.queueSize = Math.max(1, queueSize);
+		return this;
+	}
+
+	ImportPipeline<T> withBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+		return this;
+	}
+
+	/// Runs the pipeline. The reader and the converters are executed by the
+	/// given executor, which needs at least `parallelism + 1` threads.
+	Res<Void> run(ExecutorService exec, Source<T> source) {
+		var parsed = new ArrayBlockingQueue<Parsed<T>>(queueSize);
+		var converted = new ArrayBlockingQueue<Converted>(queueSize);
+		var permits = new Semaphore(queueSize);
+		var failure = new AtomicReference<Throwable>();
+		var read = exec.submit(() -> read(source, parsed, permits));
+		for (int i = 0; i < parallelism; i++) {
+			exec.submit(() -> convert(parsed, converted, failure));
+		}
+
+		try {
+			consume(converted, permits, failure);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			read.cancel(true);
+			return Res.error("import was cancelled");
+		}
+
+		// when a stage failed, the converters are stopped and the reader may
+		// be blocked on the full queue
+		if (failure.get() != null) {
+			read.cancel(true);
+			return Res.error("failed to import buildings", failure.get());
+		}
+		try {
+			var res = read.get();
+			return res.hasError()
+				? res.castError()
+				: Res.VOID;
+		} catch (Exception e) {
+			return Res.error("failed to read buildings", e);
+		}
+	}
+
+	/// The read stage: reads the items of the source and passes them to the
+	/// converters. At the end, an end marker is sent to each converter.
+	private Res<?> read(
+		Source<T> source, BlockingQueue<Parsed<T>> queue, Semaphore permits
+	) {
+		int[] index = {0};
+		try {
+			return source.forEach(item -> {
+				try {
+					permits.acquire();
+					queue.put(new Parsed<>(index[0]++, item));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("import was cancelled", e);
+				}
+			});
+		} finally {
+			putEnd(queue, Parsed.end(), parallelism);
+		}
+	}
+
+	/// The convert stage: converts the items into buildings until an end
+	/// marker is received or another converter failed. Also for skipped
+	/// items, a result is sent, so that the consumer can restore the order.
+	private void convert(
+		BlockingQueue<Parsed<T>> in,
+		BlockingQueue<Converted> out,
+		AtomicReference<Throwable> failure
+	) {
+		try {
+			while (failure.get() == null) {
+				var next = in.take();
+				if (next.index < 0)
+					return;
+				var building = converter.apply(next.item);
+				out.put(new Converted(next.index, building));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable e) {
+			// also errors, otherwise the item would be missing in the result
+			failure.compareAndSet(null, e);
+		} finally {
+			putEnd(out, Converted.END, 1);
+		}
+	}
+
+	/// The consume stage: collects the converted buildings in the order of
+	/// the source and passes them in batches to the consumer until all
+	/// converters are finished or one of them failed. When items are still
+	/// missing at the end, this is recorded as failure.
+	private void consume(
+		BlockingQueue<Converted> queue,
+		Semaphore permits,
+		AtomicReference<Throwable> failure
+	) throws InterruptedException {
+		var pending = new HashMap<Integer, Converted>();
+		var batch = new ArrayList<Building>(batchSize);
+		int nextIndex = 0;
+		int open = parallelism;
+		while (open > 0) {
+			var next = queue.take();
+			if (next == Converted.END) {
+				open--;
+				continue;
+			}
+			if (failure.get() != null)
+				continue;
+			pending.put(next.index, next);
+			Converted c;
+			while ((c = pending.remove(nextIndex)) != null) {
+				nextIndex++;
+				permits.release();
+				if (c.building == null)
+					continue;
+				batch.add(c.building);
+				if (batch.size() >= batchSize) {
+					accept(batch, failure);
+					batch = new ArrayList<>(batchSize);
+				}
+			}
+		}
+		if (failure.get() != null)
+			return;
+		if (!pending.isEmpty()) {
+			failure.compareAndSet(null, new IllegalStateException(
+				"no result for item " + nextIndex + "; "
+					+ pending.size() + " items could not be passed on"));
+			return;
+		}
+		if (!batch.isEmpty()) {
+			accept(batch, failure);
+		}
+	}
+
+	/// Passes the batch to the consumer. If this fails, the queue is still
+	/// drained until the converters are stopped, so that they are not
+	/// blocked on a full queue.
+	private void accept(
+		List<Building> batch, AtomicReference<Throwable> failure
+	) {
+		try {
+			consumer.accept(batch);
+		} catch (Throwable e) {
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	/// Sends end markers to the next stage. When the current thread was
+	/// interrupted, the import is cancelled and no markers are sent.
+	private static <E> void putEnd(BlockingQueue<E> queue, E end, int count) {
+		if (Thread.currentThread().isInterrupted())
+			return;
+		try {
+			for (int i = 0; i < count; i++) {
+				queue.put(end);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/// A source of items, like a [com.greendelta.bioheating.citygml.GmlStream].
+	@FunctionalInterface
+	interface Source<T> {
+		Res<?> forEach(Consumer<T> fn);
+	}
+
+	private record Parsed<T>(int index, T item) {
+
+		static <T> Parsed<T> end() {
+			return new Parsed<>(-1, null);
+		}
+	}
+
+	private record Converted(int index, Building building) {
+		static final Converted END = new Converted(-1, null);
+	}
+}
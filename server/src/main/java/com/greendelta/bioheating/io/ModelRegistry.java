@@ -0,0 +1,212 @@
+package com.greendelta.bioheating.io;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.greendelta.bioheating.util.Res;
+
+/// Holds the heat demand models and the mapping tables of the imports, so
+/// that they are loaded only once and shared between imports. All values are
+/// loaded lazily on first access and the registry can be used from multiple
+/// threads.
+///
+/// The model is read from the `model.json` file in the model folder of the
+/// registry when such a file exists, otherwise the bundled default model is
+/// used. With [#reload()], a new model file that was dropped into that
+/// folder replaces the current models; the predictors that were handed out
+/// before stay valid.
+public final class ModelRegistry {
+
+	private static final String MODEL_FILE = "model.json";
+
+	private final Path modelFile;
+
+	private volatile Mappings mappings;
+	private volatile BoostPredictor boost;
+	private volatile TreeEnsemble trees;
+
+	/// The modification time of the model file from which the current models
+	/// were loaded; -1 when the bundled model is used.
+	private long modelStamp = -1;
+
+	/// The implementations of the heat demand predictor.
+	public enum Engine {
+
+		/// The native XGBoost library.
+		XGBOOST,
+
+		/// The pure Java evaluation of the model, see [TreeEnsemble].
+		JAVA;
+
+		public static Engine of(String name) {
+			return name != null && "java".equalsIgnoreCase(name.strip())
+				? JAVA
+				: XGBOOST;
+		}
+	}
+
+	private ModelRegistry(Path modelDir) {
+		this.modelFile = modelDir != null
+			? modelDir.resolve(MODEL_FILE)
+			: null;
+	}
+
+	/// Returns the shared registry that uses the bundled models.
+	public static ModelRegistry getDefault() {
+		return Holder.INSTANCE;
+	}
+
+	/// Creates a registry that reads the model from the given folder, when it
+	/// contains a model file.
+	public static ModelRegistry of(Path modelDir) {
+		return new ModelRegistry(modelDir);
+	}
+
+	Res<Mappings> mappings() {
+		var m = mappings;
+		if (m != null)
+			return Res.of(m);
+		synchronized (this) {
+			if (mappings == null) {
+				var res = Mappings.read();
+				if (res.hasError())
+					return res;
+				mappings = res.value();
+			}
+			return Res.of(mappings);
+		}
+	}
+
+	public Res<HeatPredictor> predictor(Engine engine) {
+		return engine == Engine.JAVA
+			? javaPredictor()
+			: boostPredictor();
+	}
+
+	private Res<HeatPredictor> boostPredictor() {
+		var b = boost;
+		if (b != null)
+			return Res.of(b);
+		synchronized (this) {
+			if (boost == null) {
+				var res = load(BoostPredictor::read);
+				if (res.hasError())
+					return res.castError();
+				useStamp(res.value().stamp());
+				boost = res.value().model();
+			}
+			return Res.of(boost);
+		}
+	}
+
+	private Res<HeatPredictor> javaPredictor() {
+		var t = trees;
+		if (t != null)
+			return Res.of(t);
+		synchronized (this) {
+			if (trees == null) {
+				var res = load(TreeEnsemble::read);
+				if (res.hasError())
+					return res.castError();
+				useStamp(res.value().stamp());
+				trees = res.value().model();
+			}
+			return Res.of(trees);
+		}
+	}
+
+	/// Checks if the model file was changed since the models were loaded and
+	/// reloads the models that are in use in this case. Returns `true` when
+	/// the models were replaced. When the new file cannot be read, the current
+	/// models are kept and an error is returned; the file is then checked
+	/// again on the next call.
+	public synchronized Res<Boolean> reload() {
+		if (modelFile == null || !Files.isRegularFile(modelFile))
+			return Res.of(false);
+		long stamp;
+		try {
+			stamp = Files.getLastModifiedTime(modelFile).toMillis();
+		} catch (Exception e) {
+			return Res.error("failed to check model file " + modelFile, e);
+		}
+		if (stamp == modelStamp)
+			return Res.of(false);
+
+		// load the new models before replacing the current ones; nothing is
+		// changed until all of them were loaded
+		BoostPredictor nextBoost = null;
+		if (boost != null) {
+			var res = load(BoostPredictor::read);
+			if (res.hasError())
+				return res.wrapError("failed to reload model");
+			nextBoost = res.value().model();
+		}
+		TreeEnsemble nextTrees = null;
+		if (trees != null) {
+			var res = load(TreeEnsemble::read);
+			if (res.hasError())
+				return res.wrapError("failed to reload model");
+			nextTrees = res.value().model();
+		}
+		boost = nextBoost;
+		trees = nextTrees;
+		modelStamp = stamp;
+		return Res.of(true);
+	}
+
+	/// Sets the stamp of the model file from which a model was loaded. When
+	/// the file changed since the other models were loaded, these are
+	/// dropped so that they are loaded again from the same file. Must be
+	/// called while holding the lock of this registry.
+	private void useStamp(long stamp) {
+		if (stamp == modelStamp)
+			return;
+		boost = null;
+		trees = null;
+		modelStamp = stamp;
+	}
+
+	/// Reads a model from the model file or the bundled default model,
+	/// together with the modification time of the file (-1 for the bundled
+	/// model). This has no side effects on the registry.
+	private <T> Res<Loaded<T>> load(ModelReader<T> reader) {
+		if (modelFile != null && Files.isRegularFile(modelFile)) {
+			try {
+				long stamp = Files.getLastModifiedTime(modelFile).toMillis();
+				try (var stream = Files.newInputStream(modelFile)) {
+					var res = reader.read(stream);
+					return res.hasError()
+						? res.castError()
+						: Res.of(new Loaded<>(res.value(), stamp));
+				}
+			} catch (Exception e) {
+				return Res.error("failed to read model file " + modelFile, e);
+			}
+		}
+
+		var stream = ModelRegistry.class.getResourceAsStream(MODEL_FILE);
+		if (stream == null)
+			return Res.error("default model not found");
+		try (stream) {
+			var res = reader.read(stream);
+			return res.hasError()
+				? res.castError()
+				: Res.of(new Loaded<>(res.value(), -1));
+		} catch (Exception e) {
+			return Res.error("failed to read default model", e);
+		}
+	}
+
+	private record Loaded<T>(T model, long stamp) {
+	}
+
+	@FunctionalInterface
+	private interface ModelReader<T> {
+		Res<T> read(InputStream stream);
+	}
+
+	private static class Holder {
+		private static final ModelRegistry INSTANCE = new ModelRegistry(null);
+	}
+}
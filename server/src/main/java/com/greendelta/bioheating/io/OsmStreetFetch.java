@@ -1,6 +1,10 @@
 package com.greendelta.bioheating.io;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 
 import com.greendelta.bioheating.model.GeoMap;
 import com.greendelta.bioheating.model.Inclusion;
@@ -9,24 +13,54 @@ import com.greendelta.bioheating.util.Res;
 
 class OsmStreetFetch {
 
-	private final GeoMap map;
+	private final String crs;
+	private final Envelope envelope;
 	private final OsmClient client;
 
-	private OsmStreetFetch(GeoMap map) {
-		this.map = map;
+	private OsmStreetFetch(String crs, Envelope envelope) {
+		this.crs = crs;
+		this.envelope = envelope;
 		this.client = OsmClient.getDefault();
 	}
 
 	public static Res<Void> into(GeoMap map) {
-		return map == null || map.buildings().isEmpty()
-			? Res.error("no buildings found")
-			: new OsmStreetFetch(map).doIt();
+		if (map == null || map.buildings().isEmpty())
+			return Res.error("no buildings found");
+		var env = envelopeOf(map);
+		if (env.isNull())
+			return Res.error("no coordinates found for buildings in map");
+		var streets = fetch(map.crs(), env);
+		if (streets.hasError())
+			return streets.castError();
+		map.streets().addAll(streets.value());
+		return Res.VOID;
 	}
 
-	private Res<Void> doIt() {
+	/// Fetches the streets within the given envelope. The envelope and the
+	/// returned streets are in the given CRS of the map.
+	static Res<List<Street>> fetch(String crs, Envelope envelope) {
+		if (envelope == null || envelope.isNull())
+			return Res.error("no envelope provided");
+		return new OsmStreetFetch(crs, envelope).doIt();
+	}
+
+	private static Envelope envelopeOf(GeoMap map) {
+		var env = new Envelope();
+		for (var building : map.buildings()) {
+			var cs = building.coordinates();
+			if (cs == null)
+				continue;
+			for (var c : cs) {
+				env.expandToInclude(c.x, c.y);
+			}
+		}
+		return env;
+	}
+
+	private Res<List<Street>> doIt() {
 
 		// calculate the map bounds
-		var boundsRes = Bounds.of(map);
+		var boundsRes = Bounds.of(crs, envelope);
 		if (boundsRes.hasError())
 			return boundsRes.wrapError("failed to get map bound");
 		var bs = boundsRes.value();
@@ -37,12 +71,13 @@ class OsmStreetFetch {
 			return streets.wrapError("failed to fetch streets");
 
 		// initialize the projector
-		var transRes = CoordinateTransformer.fromWgs84To(map.crs());
+		var transRes = CoordinateTransformer.fromWgs84To(crs);
 		if (transRes.hasError())
 			return transRes.wrapError("failed to load projector");
 		var trans = transRes.value();
 
 		// create the streets
+		var list = new ArrayList<Street>();
 		for (var s : streets.value()) {
 			var geometry = s.geometry();
 			if (geometry == null || geometry.isEmpty())
@@ -50,10 +85,10 @@ class OsmStreetFetch {
 			var street = convert(s, trans);
 			if (street.hasError())
 				continue;  // we just skip conversion errors currently
-			map.streets().add(street.value());
+			list.add(street.value());
 		}
 
-		return Res.VOID;
+		return Res.of(list);
 	}
 
 	private Res<Street> convert(OsmStreet s, CoordinateTransformer trans) {
@@ -87,33 +122,13 @@ class OsmStreetFetch {
 		double south, double west, double north, double east
 	) {
 
-		static Res<Bounds> of(GeoMap map) {
-			if (map == null || map.buildings().isEmpty())
-				return Res.error("no buildings to calculate bound from");
-
-			double minX = Double.MAX_VALUE;
-			double minY = Double.MAX_VALUE;
-			double maxX = -Double.MIN_VALUE;
-			double maxY = -Double.MIN_VALUE;
-			boolean updated = false;
-
-			for (var building : map.buildings()) {
-				var cs = building.coordinates();
-				if (cs == null)
-					continue;
-				for (var c : cs) {
-					minX = Math.min(minX, c.x);
-					minY = Math.min(minY, c.y);
-					maxX = Math.max(maxX, c.x);
-					maxY = Math.max(maxY, c.y);
-					updated = true;
-				}
-			}
-
-			if (!updated)
-				return Res.error("no coordinates found for buildings in map");
+		static Res<Bounds> of(String crs, Envelope env) {
+			double minX = env.getMinX();
+			double minY = env.getMinY();
+			double maxX = env.getMaxX();
+			double maxY = env.getMaxY();
 
-			var transRes = CoordinateTransformer.toWgs84From(map);
+			var transRes = CoordinateTransformer.toWgs84From(crs);
 			if (transRes.hasError())
 				return transRes.wrapError("could not create CRS converter");
 			var trans = transRes.value();
@@ -0,0 +1,293 @@
+package com.greendelta.bioheating.io;
+
+import java.io.InputStream;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.util.Res;
+
+/// Evaluates an XGBoost tree ensemble in plain Java, without the native
+/// XGBoost library. The model is read from the JSON format of XGBoost (as
+/// written by `Booster.saveModel` with a `.json` extension) and the nodes of
+/// all trees are stored in flat arrays. Instances are immutable and can be
+/// used from multiple threads; the evaluation of a row does not allocate
+/// memory.
+///
+/// Like XGBoost, the evaluation uses single precision: a node goes to its left
+/// child when `value < threshold` and to its default child when the value is
+/// missing (`NaN`); the leaf values are added to the base margin tree by tree.
+public final class TreeEnsemble implements HeatPredictor {
+
+	private final int featureCount;
+	private final float baseMargin;
+	private final Link link;
+
+	/// The index of the root node of each tree.
+	private final int[] roots;
+	/// The weight of each tree; only different from 1 for DART models.
+	private final float[] treeWeights;
+
+	/// The feature index of a split node, or -1 for a leaf.
+	private final int[] features;
+	/// The split threshold of a node, or the leaf value for a leaf.
+	private final float[] values;
+	private final int[] lefts;
+	private final int[] rights;
+	/// The child of a node for missing values.
+	private final int[] defaults;
+
+	/// The inverse link function of the objective of the model.
+	private enum Link {
+		IDENTITY, LOGISTIC, EXP
+	}
+
+	private TreeEnsemble(
+		int featureCount, float baseMargin, Link link,
+		int[] roots, float[] treeWeights,
+		int[] features, float[] values, int[] lefts, int[] rights, int[] defaults
+	) {
+		this.featureCount = featureCount;
+		this.baseMargin = baseMargin;
+		this.link = link;
+		this.roots = roots;
+		this.treeWeights = treeWeights;
+		this.features = features;
+		this.values = values;
+		this.lefts = lefts;
+		this.rights = rights;
+		this.defaults = defaults;
+	}
+
+	/// Reads the default model that is also used by the [BoostPredictor].
+	public static TreeEnsemble getDefault() {
+		var stream = TreeEnsemble.class.getResourceAsStream("model.json");
+		if (stream == null)
+			throw new RuntimeException("default model not found");
+		try (stream) {
+			return read(stream).orElseThrow();
+		} catch (Exception e) {
+			throw new RuntimeException("failed to load default model", e);
+		}
+	}
+
+	public static Res<TreeEnsemble> read(InputStream stream) {
+		if (stream == null)
+			return Res.error("no model stream provided");
+		try {
+			var root = new ObjectMapper()
+				.enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+				.readTree(stream);
+			return of(root);
+		} catch (Exception e) {
+			return Res.error("failed to read model", e);
+		}
+	}
+
+	private static Res<TreeEnsemble> of(JsonNode root) {
+		var learner = root.path("learner");
+		var params = learner.path("learner_model_param");
+		if (intOf(params.path("num_class")) > 1)
+			return Res.error("multi-class models are not supported");
+		int featureCount = intOf(params.path("num_feature"));
+
+		var objective = learner.path("objective").path("name").asText("");
+		var link = linkOf(objective);
+		if (link == null)
+			return Res.error("unsupported objective: " + objective);
+
+		// the base score is stored as a prediction; for the logistic
+		// objectives, this is a probability. `binary:logitraw` returns raw
+		// margins, but before XGBoost 2.0, its base score was a probability
+		// too; since then, it is used as margin directly
+		float baseScore = floatOf(params.path("base_score"));
+		float baseMargin = switch (link) {
+			case IDENTITY -> "binary:logitraw".equals(objective)
+				&& intOf(root.path("version").path(0)) < 2
+				? logit(baseScore)
+				: baseScore;
+			case LOGISTIC -> logit(baseScore);
+			case EXP -> (float) Math.log(baseScore);
+		};
+
+		// the trees of a DART booster are nested in a gbtree booster
+		var booster = learner.path("gradient_booster");
+		var boosterName = booster.path("name").asText("gbtree");
+		var model = switch (boosterName) {
+			case "gbtree" -> booster.path("model");
+			case "dart" -> booster.path("gbtree").path("model");
+			default -> null;
+		};
+		if (model == null)
+			return Res.error("unsupported booster: " + boosterName);
+		var trees = model.path("trees");
+		if (!trees.isArray() || trees.isEmpty())
+			return Res.error("no trees found in model");
+
+		int treeCount = trees.size();
+		int nodeCount = 0;
+		for (var tree : trees) {
+			nodeCount += tree.path("left_children").size();
+		}
+
+		var roots = new int[treeCount];
+		var treeWeights = new float[treeCount];
+		var weightDrop = booster.path("weight_drop");
+		var features = new int[nodeCount];
+		var values = new float[nodeCount];
+		var lefts = new int[nodeCount];
+		var rights = new int[nodeCount];
+		var defaults = new int[nodeCount];
+
+		int offset = 0;
+		for (int t = 0; t < treeCount; t++) {
+			var tree = trees.get(t);
+			var left = tree.path("left_children");
+			var right = tree.path("right_children");
+			var indices = tree.path("split_indices");
+			var conditions = tree.path("split_conditions");
+			var defaultLeft = tree.path("default_left");
+			var types = tree.path("split_type");
+			int n = left.size();
+			if (n == 0 || right.size() != n || indices.size() != n
+				|| conditions.size() != n || defaultLeft.size() != n)
+				return Res.error("invalid node arrays in tree " + t);
+
+			roots[t] = offset;
+			treeWeights[t] = weightDrop.isArray() && t < weightDrop.size()
+				? floatOf(weightDrop.get(t))
+				: 1f;
+			for (int i = 0; i < n; i++) {
+				int node = offset + i;
+				values[node] = floatOf(conditions.get(i));
+				int l = left.get(i).asInt();
+				if (l < 0) {
+					features[node] = -1;
+					continue;
+				}
+				if (types.isArray() && types.size() == n && types.get(i).asInt() != 0)
+					return Res.error("categorical splits are not supported");
+				int r = right.get(i).asInt();
+				int feature = indices.get(i).asInt();
+				if (l >= n || r < 0 || r >= n || feature < 0)
+					return Res.error("invalid node " + i + " in tree " + t);
+				features[node] = feature;
+				lefts[node] = offset + l;
+				rights[node] = offset + r;
+				defaults[node] = defaultLeft.get(i).asInt() != 0
+					? offset + l
+					: offset + r;
+				featureCount = Math.max(featureCount, feature + 1);
+			}
+			offset += n;
+		}
+
+		return Res.of(new TreeEnsemble(
+			featureCount, baseMargin, link, roots, treeWeights,
+			features, values, lefts, rights, defaults));
+	}
+
+	private static Link linkOf(String objective) {
+		return switch (objective) {
+			case "reg:squarederror", "reg:linear", "reg:squaredlogerror",
+					 "reg:pseudohubererror", "reg:absoluteerror", "reg:quantileerror",
+					 "binary:logitraw" -> Link.IDENTITY;
+			case "reg:logistic", "binary:logistic" -> Link.LOGISTIC;
+			case "count:poisson", "reg:gamma", "reg:tweedie" -> Link.EXP;
+			default -> null;
+		};
+	}
+
+	private static float logit(float p) {
+		return (float) -Math.log(1.0 / p - 1.0);
+	}
+
+	/// Parses a float value like XGBoost writes it. Values are read from their
+	/// decimal representation to avoid double rounding; the base score can be
+	/// a string and, in newer versions, a vector like `[5E-1]`.
+	private static float floatOf(JsonNode node) {
+		if (node == null || node.isMissingNode() || node.isNull())
+			return 0f;
+		if (node.isNumber())
+			return Float.parseFloat(node.decimalValue().toString());
+		var text = node.asText().strip();
+		if (text.startsWith("[") && text.endsWith("]")) {
+			text = text.substring(1, text.length() - 1).strip();
+		}
+		return text.isEmpty()
+			? 0f
+			: Float.parseFloat(text);
+	}
+
+	private static int intOf(JsonNode node) {
+		if (node == null || node.isMissingNode() || node.isNull())
+			return 0;
+		return node.isNumber()
+			? node.asInt()
+			: Integer.parseInt(node.asText().strip());
+	}
+
+	/// Returns the number of features that a row must have.
+	public int featureCount() {
+		return featureCount;
+	}
+
+	public int treeCount() {
+		return roots.length;
+	}
+
+	/// Evaluates the row that starts at the given offset of the data array.
+	public float predict(float[] data, int offset) {
+		float sum = baseMargin;
+		for (int t = 0; t < roots.length; t++) {
+			int node = roots[t];
+			int feature;
+			while ((feature = features[node]) >= 0) {
+				float v = data[offset + feature];
+				node = v != v
+					? defaults[node]
+					: v < values[node] ? lefts[node] : rights[node];
+			}
+			sum += values[node] * treeWeights[t];
+		}
+		return switch (link) {
+			case IDENTITY -> sum;
+			case LOGISTIC -> (float) (1.0 / (1.0 + Math.exp(-sum)));
+			case EXP -> (float) Math.exp(sum);
+		};
+	}
+
+	public float predict(float[] row) {
+		return predict(row, 0);
+	}
+
+	/// Evaluates the rows of the given row-major matrix with the given row
+	/// width and writes the results into the output array.
+	public void predictAll(float[] data, int width, float[] out) {
+		if (width < featureCount)
+			throw new IllegalArgumentException(
+				"rows have " + width + " features; model needs " + featureCount);
+		int rows = data.length / width;
+		for (int i = 0; i < rows; i++) {
+			out[i] = predict(data, i * width);
+		}
+	}
+
+	@Override
+	public float predict(Building b) {
+		return b != null
+			? predict(BoostEncoder.encode(b))
+			: 0;
+	}
+
+	@Override
+	public void predictRows(float[] buffer, int rows, float[] out, int offset) {
+		if (BoostEncoder.PARAMS < featureCount)
+			throw new IllegalArgumentException(
+				"model needs " + featureCount + " features");
+		for (int i = 0; i < rows; i++) {
+			out[offset + i] = predict(buffer, i * BoostEncoder.PARAMS);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.greendelta.bioheating.model;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+/// Writes buildings and streets of a map with binary `COPY` commands. The
+/// entities must already have their IDs assigned. The columns correspond to
+/// the mappings of the respective entity classes, so that the rows can be
+/// read through JPA afterwards.
+final class BulkInsert {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final String BUILDINGS = """
+		COPY tbl_buildings (
+			id, name, coordinates, f_map, roof_type, function, height, storeys,
+			ground_area, heated_area, volume, country, locality, postal_code,
+			street, street_number, climate_zone, heat_demand, is_heated,
+			inclusion, f_fuel)
+		FROM STDIN (FORMAT binary)""";
+
+	private static final String STREETS = """
+		COPY tbl_streets (id, name, coordinates, f_map, inclusion)
+		FROM STDIN (FORMAT binary)""";
+
+	private BulkInsert() {
+	}
+
+	static void buildings(
+		Connection con, long mapId, List<Building> buildings
+	) throws SQLException, IOException {
+		if (buildings.isEmpty())
+			return;
+		try (var rows = buildingRows(con, mapId)) {
+			for (var b : buildings) {
+				rows.write(b);
+			}
+		}
+	}
+
+	/// Starts a `COPY` command for buildings of the given map. The rows can
+	/// be written in multiple steps; the command is completed when the rows
+	/// are closed.
+	static BuildingRows buildingRows(
+		Connection con, long mapId
+	) throws SQLException, IOException {
+		var pg = con.unwrap(PGConnection.class);
+		var stream = new PGCopyOutputStream(pg, BUILDINGS, BUFFER_SIZE);
+		return new BuildingRows(stream, mapId);
+	}
+
+	static void streets(
+		Connection con, long mapId, List<Street> streets
+	) throws SQLException, IOException {
+		if (streets.isEmpty())
+			return;
+		var coordinates = new CoordinateConverter();
+		try (var w = open(con, STREETS)) {
+			for (var s : streets) {
+				w.startRow(5)
+					.writeInt(s.id())
+					.writeString(s.name())
+					.writeBytes(coordinates.convertToDatabaseColumn(s.coordinates()))
+					.writeInt(mapId)
+					.writeEnum(s.inclusion());
+			}
+		}
+	}
+
+	private static CopyWriter open(
+		Connection con, String sql
+	) throws SQLException, IOException {
+		var pg = con.unwrap(PGConnection.class);
+		return new CopyWriter(new PGCopyOutputStream(pg, sql, BUFFER_SIZE));
+	}
+
+	/// The rows of an open `COPY` command for buildings.
+	static final class BuildingRows implements AutoCloseable {
+
+		private final PGCopyOutputStream stream;
+		private final CopyWriter writer;
+		private final CoordinateConverter coordinates;
+		private final long mapId;
+
+		private BuildingRows(
+			PGCopyOutputStream stream, long mapId
+		) throws IOException {
+			this.stream = stream;
+			this.writer = new CopyWriter(stream);
+			this.coordinates = new CoordinateConverter();
+			this.mapId = mapId;
+		}
+
+		void write(Building b) throws IOException {
+			writer.startRow(21)
+				.writeInt(b.id())
+				.writeString(b.name())
+				.writeBytes(coordinates.convertToDatabaseColumn(b.coordinates()))
+				.writeInt(mapId)
+				.writeString(b.roofType())
+				.writeString(b.function())
+				.writeDouble(b.height())
+				.writeInt(b.storeys())
+				.writeDouble(b.groundArea())
+				.writeDouble(b.heatedArea())
+				.writeDouble(b.volume())
+				.writeString(b.country())
+				.writeString(b.locality())
+				.writeString(b.postalCode())
+				.writeString(b.street())
+				.writeString(b.streetNumber())
+				.writeInt(b.climateZone())
+				.writeDouble(b.heatDemand())
+				.writeBoolean(b.isHeated())
+				.writeEnum(b.inclusion())
+				.writeRef(b.fuel());
+		}
+
+		/// Aborts the `COPY` command without writing any of the rows, e.g.
+		/// when the transaction is rolled back.
+		void cancel() {
+			try {
+				stream.cancelCopy();
+			} catch (SQLException ignored) {
+			}
+		}
+
+		/// Writes the trailer, which completes the `COPY` command.
+		@Override
+		public void close() throws IOException {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.greendelta.bioheating.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+import jakarta.persistence.EntityManager;
+
+/// Writes new features into the map of a project in a single transaction,
+/// see [Database#openBulk]. The buildings can be written in batches while
+/// they are produced, e.g. during an import, so that they do not need to be
+/// held in memory until the end. They are streamed into one binary `COPY`
+/// command and their IDs are reserved per batch with the [IdAllocator] of the
+/// database.
+///
+/// Nothing is visible to other transactions before [#commit] is called; when
+/// the writer is closed without a commit, everything is rolled back.
+public final class BulkWriter implements AutoCloseable {
+
+	private final EntityManager em;
+	private final IdAllocator ids;
+	private final Consumer<Project> onCommit;
+	private final Project project;
+	private final long mapId;
+
+	private BulkInsert.BuildingRows buildings;
+	private boolean done;
+
+	BulkWriter(
+		EntityManager em, IdAllocator ids, Project project,
+		Consumer<Project> onCommit
+	) {
+		this.em = em;
+		this.ids = ids;
+		this.project = project;
+		this.mapId = project.map().id();
+		this.onCommit = onCommit;
+	}
+
+	/// Assigns IDs to the given new buildings and writes them into the map.
+	/// The buildings are not added to the map of the project.
+	public void writeBuildings(List<Building> batch) {
+		if (batch.isEmpty())
+			return;
+		checkOpen();
+		var block = ids.reserve(batch.size());
+		for (var b : batch) {
+			b.id(block.next());
+		}
+		try {
+			if (buildings == null) {
+				buildings = BulkInsert.buildingRows(connection(), mapId);
+			}
+			for (var b : batch) {
+				buildings.write(b);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (SQLException e) {
+			throw new IllegalStateException("bulk insert failed", e);
+		}
+	}
+
+	/// Assigns IDs to the given new streets and writes them into the map.
+	/// The streets are not added to the map of the project.
+	public void writeStreets(List<Street> streets) {
+		if (streets.isEmpty())
+			return;
+		checkOpen();
+		var block = ids.reserve(streets.size());
+		for (var s : streets) {
+			s.id(block.next());
+		}
+		try {
+			// only one COPY command can be active on a connection
+			finishBuildings();
+			BulkInsert.streets(connection(), mapId, streets);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (SQLException e) {
+			throw new IllegalStateException("bulk insert failed", e);
+		}
+	}
+
+	/// Commits the transaction and returns the saved project. The written
+	/// features are not contained in its map; they are loaded when the
+	/// project is loaded again from the database.
+	public Project commit() {
+		checkOpen();
+		try {
+			finishBuildings();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		em.getTransaction().commit();
+		done = true;
+		em.close();
+		onCommit.accept(project);
+		return project;
+	}
+
+	@Override
+	public void close() {
+		if (done)
+			return;
+		done = true;
+		if (buildings != null) {
+			buildings.cancel();
+			buildings = null;
+		}
+		try {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+		} finally {
+			em.close();
+		}
+	}
+
+	private void finishBuildings() throws IOException {
+		if (buildings == null)
+			return;
+		var rows = buildings;
+		buildings = null;
+		rows.close();
+	}
+
+	private Connection connection() {
+		return em.unwrap(Connection.class);
+	}
+
+	private void checkOpen() {
+		if (done)
+			throw new IllegalStateException("bulk writer is closed");
+	}
+}
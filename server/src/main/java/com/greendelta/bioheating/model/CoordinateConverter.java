@@ -1,38 +1,178 @@
 package com.greendelta.bioheating.model;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.locationtech.jts.geom.Coordinate;
 
 import jakarta.persistence.AttributeConverter;
 import jakarta.persistence.Converter;
 
+/// Stores coordinates in a compact binary format (version 1):
+///
+/// ```
+/// header  : 1 byte, 0xF0 | version << 1 | hasZ
+/// scale   : 1 byte, the decimal exponent e; values are stored as v * 10^e
+/// count   : varint, the number of points
+/// points  : x, y (and z) of each point as zig-zag varints; the first point
+///           with absolute values, all others as difference to the previous
+///           point
+/// ```
+///
+/// The exponent is the smallest one for which all values can be restored
+/// exactly, but at most 3 (mm resolution) for projected coordinates and 9
+/// for geographic coordinates. Coordinates with non-finite values, values
+/// that are too large, or with z-values for only some points are written
+/// as raw doubles `x, y, z` after the header with version 0.
+///
+/// Data that were stored before contain just the raw doubles without a
+/// header. They are detected by their first byte, which is the first byte
+/// of a double and would be `0xF0` or larger only for values below -1e231.
 @Converter(autoApply = true)
 public class CoordinateConverter implements AttributeConverter<Coordinate[], byte[]> {
 
+	private static final int MAGIC = 0xF0;
+	private static final int RAW = 0;
+	private static final int VERSION = 1;
+	private static final int MAX_PROJECTED_SCALE = 3;
+	private static final int MAX_GEOGRAPHIC_SCALE = 9;
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+
 	@Override
 	public byte[] convertToDatabaseColumn(Coordinate[] cs) {
 		if (cs == null || cs.length == 0)
 			return null;
-		int n = cs.length * 3 * Double.BYTES;
-		var buffer = ByteBuffer.allocate(n);
+
+		// check the values and the dimension
+		int zCount = 0;
+		double max = 0;
 		for (var c : cs) {
-			buffer.putDouble(c.getX());
-			buffer.putDouble(c.getY());
-			buffer.putDouble(c.getZ());
+			if (!Double.isFinite(c.x) || !Double.isFinite(c.y))
+				return rawOf(cs);
+			if (!Double.isNaN(c.getZ())) {
+				if (!Double.isFinite(c.getZ()))
+					return rawOf(cs);
+				zCount++;
+			}
+			max = Math.max(max, Math.max(Math.abs(c.x), Math.abs(c.y)));
 		}
-		return buffer.array();
+		if (zCount > 0 && zCount < cs.length)
+			return rawOf(cs);
+		boolean hasZ = zCount > 0;
+
+		int scale = scaleOf(cs, hasZ, max > 360
+			? MAX_PROJECTED_SCALE
+			: MAX_GEOGRAPHIC_SCALE);
+		double f = POW10[scale];
+		if (Math.max(max, hasZ ? maxZ(cs) : 0) * f > (double) (1L << 52))
+			return rawOf(cs);
+
+		var out = new Output(8 + cs.length * (hasZ ? 9 : 6));
+		out.write(MAGIC | VERSION << 1 | (hasZ ? 1 : 0));
+		out.write(scale);
+		out.writeVarint(cs.length);
+		long px = 0, py = 0, pz = 0;
+		for (var c : cs) {
+			long x = Math.round(c.x * f);
+			long y = Math.round(c.y * f);
+			out.writeVarint(zigZag(x - px));
+			out.writeVarint(zigZag(y - py));
+			px = x;
+			py = y;
+			if (hasZ) {
+				long z = Math.round(c.getZ() * f);
+				out.writeVarint(zigZag(z - pz));
+				pz = z;
+			}
+		}
+		return out.toByteArray();
 	}
 
 	@Override
 	public Coordinate[] convertToEntityAttribute(byte[] bytes) {
 		if (bytes == null || bytes.length == 0)
 			return new Coordinate[0];
+		int header = bytes[0] & 0xFF;
+		if ((header & MAGIC) != MAGIC)
+			return rawCoordinatesOf(bytes, 0);
+		int version = (header & 0x0F) >> 1;
+		if (version == RAW)
+			return rawCoordinatesOf(bytes, 1);
+		if (version != VERSION)
+			throw new IllegalArgumentException(
+				"unsupported coordinate format version: " + version);
 
-		var buffer = ByteBuffer.wrap(bytes);
-		int n = bytes.length / (3 * Double.BYTES);
+		boolean hasZ = (header & 1) != 0;
+		var in = new Input(bytes, 1);
+		int scale = in.read();
+		if (scale >= POW10.length)
+			throw new IllegalArgumentException("invalid coordinate scale: " + scale);
+		double f = POW10[scale];
+		int n = (int) in.readVarint();
 		var cs = new Coordinate[n];
+		long x = 0, y = 0, z = 0;
+		for (int i = 0; i < n; i++) {
+			x += unZigZag(in.readVarint());
+			y += unZigZag(in.readVarint());
+			if (hasZ) {
+				z += unZigZag(in.readVarint());
+				cs[i] = new Coordinate(x / f, y / f, z / f);
+			} else {
+				cs[i] = new Coordinate(x / f, y / f);
+			}
+		}
+		return cs;
+	}
+
+	/// Returns the smallest decimal exponent, up to the given maximum, with
+	/// which all values can be restored exactly; or the maximum if there is
+	/// no such exponent.
+	private static int scaleOf(Coordinate[] cs, boolean hasZ, int maxScale) {
+		for (int e = 0; e < maxScale; e++) {
+			double f = POW10[e];
+			boolean exact = true;
+			for (var c : cs) {
+				if (!isExact(c.x, f) || !isExact(c.y, f)
+					|| (hasZ && !isExact(c.getZ(), f))) {
+					exact = false;
+					break;
+				}
+			}
+			if (exact)
+				return e;
+		}
+		return maxScale;
+	}
+
+	private static boolean isExact(double v, double f) {
+		return Math.round(v * f) / f == v;
+	}
+
+	private static double maxZ(Coordinate[] cs) {
+		double max = 0;
+		for (var c : cs) {
+			max = Math.max(max, Math.abs(c.getZ()));
+		}
+		return max;
+	}
+
+	private static byte[] rawOf(Coordinate[] cs) {
+		int n = 1 + cs.length * 3 * Double.BYTES;
+		var buffer = ByteBuffer.allocate(n);
+		buffer.put((byte) (MAGIC | RAW << 1));
+		for (var c : cs) {
+			buffer.putDouble(c.getX());
+			buffer.putDouble(c.getY());
+			buffer.putDouble(c.getZ());
+		}
+		return buffer.array();
+	}
 
+	private static Coordinate[] rawCoordinatesOf(byte[] bytes, int offset) {
+		var buffer = ByteBuffer.wrap(bytes, offset, bytes.length - offset);
+		int n = (bytes.length - offset) / (3 * Double.BYTES);
+		var cs = new Coordinate[n];
 		for (int i = 0; i < n; i++) {
 			double x = buffer.getDouble();
 			double y = buffer.getDouble();
@@ -41,4 +181,74 @@ public class CoordinateConverter implements AttributeConverter<Coordinate[], byt
 		}
 		return cs;
 	}
+
+	private static long zigZag(long n) {
+		return (n << 1) ^ (n >> 63);
+	}
+
+	private static long unZigZag(long n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	private static class Output {
+
+		private byte[] bytes;
+		private int size;
+
+		Output(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		void write(int b) {
+			ensure(1);
+			bytes[size++] = (byte) b;
+		}
+
+		void writeVarint(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes[size++] = (byte) value;
+		}
+
+		private void ensure(int n) {
+			if (size + n > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + n));
+			}
+		}
+
+		byte[] toByteArray() {
+			return size == bytes.length
+				? bytes
+				: Arrays.copyOf(bytes, size);
+		}
+	}
+
+	private static class Input {
+
+		private final byte[] bytes;
+		private int pos;
+
+		Input(byte[] bytes, int pos) {
+			this.bytes = bytes;
+			this.pos = pos;
+		}
+
+		int read() {
+			return bytes[pos++] & 0xFF;
+		}
+
+		long readVarint() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = bytes[pos++];
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw new IllegalArgumentException("malformed varint in coordinates");
+		}
+	}
 }
@@ -0,0 +1,97 @@
+package com.greendelta.bioheating.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/// Writes rows in the binary format of the PostgreSQL `COPY` command. A row
+/// is started with the number of its fields, followed by the values in the
+/// order of the columns of the `COPY` statement. The values must match the
+/// binary representation of the column types exactly, e.g. an `int` column
+/// requires [#writeInt] and a `double precision` column [#writeDouble].
+///
+/// See https://www.postgresql.org/docs/current/sql-copy.html#id-1.9.3.55.9.4
+final class CopyWriter implements AutoCloseable {
+
+	private static final byte[] SIGNATURE = {
+		'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+	private final DataOutputStream out;
+
+	CopyWriter(OutputStream out) throws IOException {
+		this.out = new DataOutputStream(out);
+		this.out.write(SIGNATURE);
+		this.out.writeInt(0); // flags
+		this.out.writeInt(0); // length of the header extension
+	}
+
+	CopyWriter startRow(int fields) throws IOException {
+		out.writeShort(fields);
+		return this;
+	}
+
+	CopyWriter writeNull() throws IOException {
+		out.writeInt(-1);
+		return this;
+	}
+
+	/// Writes a value of an `int` column. Throws an exception when the value
+	/// is out of the range of a 4-byte integer.
+	CopyWriter writeInt(long value) throws IOException {
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			throw new IllegalArgumentException(
+				"value out of range of an int column: " + value);
+		out.writeInt(4);
+		out.writeInt((int) value);
+		return this;
+	}
+
+	/// Writes the ID of the given entity as foreign key, or `null` if the
+	/// entity is `null`.
+	CopyWriter writeRef(BaseEntity e) throws IOException {
+		return e == null
+			? writeNull()
+			: writeInt(e.id());
+	}
+
+	CopyWriter writeDouble(double value) throws IOException {
+		out.writeInt(8);
+		out.writeDouble(value);
+		return this;
+	}
+
+	CopyWriter writeBoolean(boolean value) throws IOException {
+		out.writeInt(1);
+		out.writeByte(value ? 1 : 0);
+		return this;
+	}
+
+	CopyWriter writeString(String value) throws IOException {
+		return value == null
+			? writeNull()
+			: writeBytes(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	CopyWriter writeEnum(Enum<?> value) throws IOException {
+		return value == null
+			? writeNull()
+			: writeString(value.name());
+	}
+
+	CopyWriter writeBytes(byte[] value) throws IOException {
+		if (value == null)
+			return writeNull();
+		out.writeInt(value.length);
+		out.write(value);
+		return this;
+	}
+
+	/// Writes the trailer and closes the underlying stream, which completes
+	/// the `COPY` command.
+	@Override
+	public void close() throws IOException {
+		out.writeShort(-1);
+		out.close();
+	}
+}
@@ -1,11 +1,17 @@
 package com.greendelta.bioheating.model;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
 import org.eclipse.persistence.jpa.PersistenceProvider;
 
 import com.zaxxer.hikari.HikariConfig;
@@ -18,6 +24,7 @@ public class Database implements AutoCloseable {
 
 	private final HikariDataSource pool;
 	private final EntityManagerFactory entityFactory;
+	private final IdAllocator ids;
 
 	public static Config of(String name) {
 		return new Config(name);
@@ -36,8 +43,18 @@ public class Database implements AutoCloseable {
 		var jpaConfig = new HashMap<>();
 		jpaConfig.put("jakarta.persistence.nonJtaDataSource", pool);
 		jpaConfig.put("eclipselink.target-database", "PostgreSQL");
+		// take the IDs of JPA in separate transactions, so that the lock of
+		// the sequence row is not held until the end of a transaction
+		jpaConfig.put("eclipselink.jdbc.sequence-connection-pool", "true");
 		entityFactory = new PersistenceProvider()
 			.createEntityManagerFactory("bio-heating", jpaConfig);
+		ids = new IdAllocator(this::advanceSequence, config.idBlockSize);
+	}
+
+	/// Returns the allocator for entity IDs, from which bulk operations can
+	/// take IDs without a database round trip per entity.
+	public IdAllocator ids() {
+		return ids;
 	}
 
 	public <T extends BaseEntity> T getForId(Class<T> type, long id) {
@@ -46,6 +63,28 @@ public class Database implements AutoCloseable {
 		}
 	}
 
+	/// Loads the entity with the given ID and the relations of the given
+	/// fetch plan. Returns `null` if no such entity exists.
+	public <T extends BaseEntity> T getForId(
+		Class<T> type, long id, FetchPlan plan
+	) {
+		if (plan == null || plan.paths().isEmpty())
+			return getForId(type, id);
+		try (var em = entityFactory.createEntityManager()) {
+			var q = em.createQuery(
+				"SELECT e FROM " + type.getSimpleName() + " e WHERE e.id = ?1", type);
+			q.setParameter(1, id);
+			q.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
+			for (var path : plan.paths()) {
+				q.setHint(QueryHints.BATCH, "e." + path);
+			}
+			var results = q.getResultList();
+			return results.isEmpty()
+				? null
+				: results.getFirst();
+		}
+	}
+
 	public <T extends BaseEntity> List<T> getAll(Class<T> type) {
 		try (var em = entityFactory.createEntityManager()) {
 			var q = em.createQuery(
@@ -54,6 +93,20 @@ public class Database implements AutoCloseable {
 		}
 	}
 
+	/// Executes the given JPQL query with the positional parameters `?1`,
+	/// `?2`, etc. and returns its results. Besides entities, the result type
+	/// can be a class that is created by a constructor expression of the
+	/// query: `SELECT NEW ...`.
+	public <T> List<T> query(Class<T> type, String jpql, Object... params) {
+		try (var em = entityFactory.createEntityManager()) {
+			var q = em.createQuery(jpql, type);
+			for (int i = 0; i < params.length; i++) {
+				q.setParameter(i + 1, params[i]);
+			}
+			return q.getResultList();
+		}
+	}
+
 	public <T extends BaseEntity> T insert(T entity) {
 		withTransaction(em -> em.persist(entity));
 		return entity;
@@ -65,6 +118,158 @@ public class Database implements AutoCloseable {
 		return ref.get();
 	}
 
+	/// Inserts a new project or updates an existing one, like [#insert] and
+	/// [#update], but writes the new buildings and streets of its map, those
+	/// without an ID, with binary `COPY` commands instead of persisting them
+	/// one by one through JPA. This is much faster for large maps, e.g. when
+	/// importing a city model. Everything is written in one transaction with
+	/// a [BulkWriter].
+	///
+	/// Returns the saved project with all features in its map.
+	public Project insertBulk(Project project) {
+		var map = project.map();
+		if (map == null)
+			return project.id() == 0
+				? insert(project)
+				: update(project);
+
+		var buildings = detachNew(map.buildings());
+		var streets = detachNew(map.streets());
+		Project saved;
+		try (var writer = openBulk(project)) {
+			writer.writeBuildings(buildings);
+			writer.writeStreets(streets);
+			saved = writer.commit();
+		} catch (RuntimeException e) {
+			buildings.forEach(b -> b.id(0));
+			streets.forEach(s -> s.id(0));
+			map.buildings().addAll(buildings);
+			map.streets().addAll(streets);
+			throw e;
+		}
+		saved.map().buildings().addAll(buildings);
+		saved.map().streets().addAll(streets);
+		return saved;
+	}
+
+	/// Inserts a new project or updates an existing one, which must have a
+	/// map, and returns a writer for new features of that map. The project,
+	/// the map, and the features are written in one transaction that is
+	/// completed with [BulkWriter#commit]. As the features are written past
+	/// JPA, the project and its map are evicted from the cache then.
+	public BulkWriter openBulk(Project project) {
+		if (project == null || project.map() == null)
+			throw new IllegalArgumentException("no project with a map provided");
+		var em = entityFactory.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			Project saved;
+			if (project.id() == 0) {
+				em.persist(project);
+				saved = project;
+			} else {
+				saved = em.merge(project);
+			}
+			em.flush();
+			return new BulkWriter(em, ids, saved, p -> {
+				var cache = entityFactory.getCache();
+				cache.evict(Project.class, p.id());
+				cache.evict(GeoMap.class, p.map().id());
+			});
+		} catch (RuntimeException e) {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+			throw e;
+		}
+	}
+
+	/// Executes each SQL statement of the given map for its rows of
+	/// parameters as a JDBC batch. All statements are executed in a single
+	/// transaction. Returns the total number of changed rows. The statements
+	/// are executed past JPA; thus, the modified entities need to be evicted
+	/// from the cache with [#evict].
+	public int executeBatches(Map<String, List<Object[]>> batches) {
+		if (batches.isEmpty())
+			return 0;
+		try (var con = pool.getConnection()) {
+			con.setAutoCommit(false);
+			try {
+				int count = 0;
+				for (var e : batches.entrySet()) {
+					count += executeBatch(con, e.getKey(), e.getValue());
+				}
+				con.commit();
+				return count;
+			} catch (SQLException e) {
+				con.rollback();
+				throw e;
+			} finally {
+				con.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException("failed to execute batch updates", e);
+		}
+	}
+
+	private static int executeBatch(
+		Connection con, String sql, List<Object[]> rows
+	) throws SQLException {
+		try (var stmt = con.prepareStatement(sql)) {
+			for (var row : rows) {
+				for (int i = 0; i < row.length; i++) {
+					stmt.setObject(i + 1, row[i]);
+				}
+				stmt.addBatch();
+			}
+			int count = 0;
+			for (int n : stmt.executeBatch()) {
+				count += Math.max(n, 0);
+			}
+			return count;
+		}
+	}
+
+	/// Removes the entity with the given type and ID from the shared cache,
+	/// so that it is loaded from the database the next time.
+	public void evict(Class<? extends BaseEntity> type, long id) {
+		entityFactory.getCache().evict(type, id);
+	}
+
+	/// Removes the entities without an ID from the given list and returns
+	/// them.
+	private static <T extends BaseEntity> List<T> detachNew(List<T> list) {
+		var news = new ArrayList<T>();
+		list.removeIf(e -> {
+			if (e.id() != 0)
+				return false;
+			news.add(e);
+			return true;
+		});
+		return news;
+	}
+
+	/// Adds `n` to the entity sequence and returns its new value. The
+	/// sequence is updated in its own short transaction, in the same way as
+	/// the table generator of JPA does it, so that the reserved IDs do not
+	/// overlap with IDs that are generated by JPA.
+	private long advanceSequence(int n) {
+		var sql = "UPDATE tbl_sequences SET seq_value = seq_value + ? "
+			+ "WHERE seq_name = 'entity_seq' RETURNING seq_value";
+		try (var con = pool.getConnection();
+				 var stmt = con.prepareStatement(sql)) {
+			stmt.setLong(1, n);
+			try (var rs = stmt.executeQuery()) {
+				if (!rs.next())
+					throw new IllegalStateException("entity sequence not found");
+				return rs.getLong(1);
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException("failed to allocate IDs", e);
+		}
+	}
+
 	public <T extends BaseEntity> void delete(T entity) {
 		withTransaction(em -> {
 			var e = em.contains(entity)
@@ -95,12 +300,29 @@ public class Database implements AutoCloseable {
 		pool.close();
 	}
 
+	/// Defines which relations are loaded together with an entity. The
+	/// paths are attribute paths relative to the entity, e.g.
+	/// `map.buildings`. Each relation on such a path is loaded with a single
+	/// query for all of its owners (batch fetching) instead of one query per
+	/// owner. Lazy relations that are not in the plan, like the features of
+	/// a map, are only loaded when they are accessed the first time.
+	public record FetchPlan(List<String> paths) {
+
+		/// A plan that loads just the entity and its eager relations.
+		public static final FetchPlan HEADER = new FetchPlan(List.of());
+
+		public static FetchPlan of(String... paths) {
+			return new FetchPlan(List.of(paths));
+		}
+	}
+
 	public static class Config {
 		private final String database;
 		private String user = "postgres";
 		private String password = "password";
 		private String host = "localhost";
 		private int port = 5432;
+		private int idBlockSize = 1000;
 
 		private Config(String database) {
 			this.database = Objects.requireNonNull(database);
@@ -118,6 +340,13 @@ public class Database implements AutoCloseable {
 			return this;
 		}
 
+		/// Sets the number of IDs that are reserved at once per thread by
+		/// [IdAllocator#next].
+		public Config withIdBlockSize(int size) {
+			this.idBlockSize = size;
+			return this;
+		}
+
 		private String url() {
 			return "jdbc:postgresql://" + host + ":" + port + "/" + database;
 		}
@@ -0,0 +1,88 @@
+package com.greendelta.bioheating.model;
+
+import java.util.function.IntToLongFunction;
+
+/// Hands out entity IDs from blocks that are reserved in the entity sequence
+/// (`entity_seq` in `tbl_sequences`), the same sequence from which JPA takes
+/// its IDs. A block is reserved with a single, short update of the sequence
+/// row, so that concurrent imports only touch that row once per block and
+/// never hold its lock while writing their data.
+///
+/// There are two ways to get IDs: [#next] takes them from a block of the
+/// configured size that is held per thread, and [#reserve] reserves a block
+/// of exactly the required size, e.g. for all features of an import. IDs of
+/// blocks that are not used completely are skipped; thus, IDs are unique
+/// but not necessarily contiguous.
+public final class IdAllocator {
+
+	private final IntToLongFunction sequence;
+	private final int blockSize;
+	private final ThreadLocal<Block> blocks = new ThreadLocal<>();
+
+	/// Creates an allocator with the given sequence function, which adds the
+	/// given number to the sequence and returns its new value.
+	IdAllocator(IntToLongFunction sequence, int blockSize) {
+		this.sequence = sequence;
+		this.blockSize = Math.max(1, blockSize);
+	}
+
+	public int blockSize() {
+		return blockSize;
+	}
+
+	/// Returns the next ID from the block of the current thread; reserves a
+	/// new block when this block is exhausted.
+	public long next() {
+		var block = blocks.get();
+		if (block == null || !block.hasNext()) {
+			block = reserve(blockSize);
+			blocks.set(block);
+		}
+		return block.next();
+	}
+
+	/// Reserves a block of `n` IDs.
+	public Block reserve(int n) {
+		if (n <= 0)
+			return new Block(1, 0);
+		long last = sequence.applyAsLong(n);
+		return new Block(last - n + 1, n);
+	}
+
+	/// A reserved range of IDs. A block is not thread-safe; it should be
+	/// used by a single thread or import.
+	public static final class Block {
+
+		private final long first;
+		private final int size;
+		private int used;
+
+		private Block(long first, int size) {
+			this.first = first;
+			this.size = size;
+		}
+
+		public long first() {
+			return first;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int remaining() {
+			return size - used;
+		}
+
+		public boolean hasNext() {
+			return used < size;
+		}
+
+		public long next() {
+			if (used >= size)
+				throw new IllegalStateException(
+					"all " + size + " IDs of the block are used");
+			return first + used++;
+		}
+	}
+}
@@ -3,16 +3,15 @@ package com.greendelta.bioheating.model.client;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.greendelta.bioheating.io.CoordinateTransformer;
 import com.greendelta.bioheating.model.GeoMap;
 import com.greendelta.bioheating.util.Res;
 
 public record ClientMap(List<GeoFeature> features) {
 
 	public static Res<ClientMap> of(GeoMap map) {
-		var res = CoordinateTransformer.toWgs84From(map);
+		var res = Wgs84Cache.of(map);
 		if (res.hasError())
-			return res.wrapError("failed to create transformer for map CRS");
+			return res.castError();
 		var wgs84 = res.value();
 
 		var features = new ArrayList<GeoFeature>(
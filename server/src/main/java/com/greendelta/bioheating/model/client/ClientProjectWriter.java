@@ -0,0 +1,141 @@
+package com.greendelta.bioheating.model.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.greendelta.bioheating.io.CoordinateTransformer;
+import com.greendelta.bioheating.model.Project;
+import com.greendelta.bioheating.model.client.Geometry.PointsSerializer;
+import com.greendelta.bioheating.util.Res;
+
+/// Writes a project in the same JSON format as [ClientProject] directly to an
+/// output stream. The features of the map are projected and written one by
+/// one, so that no object tree of the whole map is created in memory. As in
+/// [ClientMap], features with coordinates that cannot be projected are
+/// skipped.
+public class ClientProjectWriter {
+
+	private final Project project;
+	private final CoordinateTransformer wgs84;
+	private final ObjectMapper mapper;
+	private Wgs84Cache cache;
+	private double[] buffer;
+
+	private ClientProjectWriter(
+		Project project, CoordinateTransformer wgs84, ObjectMapper mapper
+	) {
+		this.project = project;
+		this.wgs84 = wgs84;
+		this.mapper = mapper;
+	}
+
+	/// Prepares the writer for the given project. Errors, like an undefined
+	/// CRS of the map, are returned here, before anything is written.
+	public static Res<ClientProjectWriter> of(Project project, ObjectMapper mapper) {
+		if (project == null)
+			return Res.error("project is null");
+		if (mapper == null)
+			return Res.error("no object mapper provided");
+		var res = CoordinateTransformer.toWgs84From(project.map());
+		if (res.hasError())
+			return res.wrapError("failed to create transformer for map CRS");
+		return Res.of(new ClientProjectWriter(project, res.value(), mapper));
+	}
+
+	/// Uses the given cache for the projected coordinates of the map. Without
+	/// a cache, the coordinates are projected into a reused buffer. A cache
+	/// for another CRS than the CRS of the map is ignored.
+	public ClientProjectWriter withCache(Wgs84Cache cache) {
+		this.cache = cache != null && Objects.equals(cache.crs(), project.map().crs())
+			? cache
+			: null;
+		return this;
+	}
+
+	public void writeTo(OutputStream out) throws IOException {
+		try (var gen = mapper.createGenerator(out)) {
+			gen.writeStartObject();
+			gen.writeNumberField("id", project.id());
+			gen.writeStringField("name", project.name());
+			gen.writeStringField("description", project.description());
+			gen.writeObjectField("climateRegion", project.climateRegion());
+			gen.writeObjectField("defaultFuel", project.defaultFuel());
+
+			gen.writeObjectFieldStart("map");
+			gen.writeArrayFieldStart("features");
+			var map = project.map();
+			try {
+				for (var b : map.buildings()) {
+					var xy = xyOf(b.id(), b.coordinates());
+					if (xy == null)
+						continue;
+					writeFeature(gen, "Polygon", xy, b.coordinates().length, true);
+					GeoFeature.propertiesOf(b, (key, value) -> writeField(gen, key, value));
+					gen.writeEndObject();
+					gen.writeEndObject();
+				}
+				for (var s : map.streets()) {
+					var xy = xyOf(s.id(), s.coordinates());
+					if (xy == null)
+						continue;
+					writeFeature(gen, "LineString", xy, s.coordinates().length, false);
+					GeoFeature.propertiesOf(s, (key, value) -> writeField(gen, key, value));
+					gen.writeEndObject();
+					gen.writeEndObject();
+				}
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			gen.writeEndArray();
+			gen.writeEndObject();
+			gen.writeEndObject();
+		}
+	}
+
+	/// Returns the projected coordinates from the cache or in the reused
+	/// buffer, or `null` if the projection failed.
+	private double[] xyOf(long id, Coordinate[] cs) {
+		if (cache != null)
+			return cache.xyOf(id, cs);
+		if (cs == null || cs.length == 0)
+			return null;
+		buffer = CoordinateTransformer.xyOf(cs, buffer);
+		return wgs84.transform(buffer, cs.length, buffer).hasError()
+			? null
+			: buffer;
+	}
+
+	/// Writes the start of a feature up to the opened properties object.
+	private void writeFeature(
+		JsonGenerator gen, String type, double[] xy, int n, boolean polygon
+	) throws IOException {
+		gen.writeStartObject();
+		gen.writeStringField("type", "Feature");
+		gen.writeObjectFieldStart("geometry");
+		gen.writeStringField("type", type);
+		gen.writeFieldName("coordinates");
+		if (polygon) {
+			gen.writeStartArray();
+		}
+		PointsSerializer.writePoints(xy, n, gen);
+		if (polygon) {
+			gen.writeEndArray();
+		}
+		gen.writeEndObject();
+		gen.writeObjectFieldStart("properties");
+	}
+
+	private void writeField(JsonGenerator gen, String key, Object value) {
+		try {
+			gen.writeObjectField(key, value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
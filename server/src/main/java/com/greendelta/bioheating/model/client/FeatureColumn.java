@@ -0,0 +1,147 @@
+package com.greendelta.bioheating.model.client;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import com.greendelta.bioheating.model.BaseEntity;
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.Fuel;
+import com.greendelta.bioheating.model.Inclusion;
+import com.greendelta.bioheating.model.Street;
+import com.greendelta.bioheating.util.Res;
+
+/// Maps a property of the map features on the client side, see
+/// [GeoFeature], to a column of the respective table and the setter of the
+/// entity field. This mapping is used for updating whole maps with a
+/// [MapSync] and single properties with a [FeaturePatch].
+record FeatureColumn<T extends BaseEntity>(
+	String property, String name, Kind kind, BiConsumer<T, Object> setter
+) {
+
+	static final List<FeatureColumn<Building>> BUILDINGS = List.of(
+		string("name", "name", Building::name),
+		string("roofType", "roof_type", Building::roofType),
+		string("function", "function", Building::function),
+		real("height", "height", Building::height),
+		integer("storeys", "storeys", Building::storeys),
+		real("groundArea", "ground_area", Building::groundArea),
+		real("heatedArea", "heated_area", Building::heatedArea),
+		real("volume", "volume", Building::volume),
+		string("country", "country", Building::country),
+		string("locality", "locality", Building::locality),
+		string("postalCode", "postal_code", Building::postalCode),
+		string("street", "street", Building::street),
+		string("streetNumber", "street_number", Building::streetNumber),
+		integer("climateZone", "climate_zone", Building::climateZone),
+		real("heatDemand", "heat_demand", Building::heatDemand),
+		bool("isHeated", "is_heated", Building::isHeated),
+		inclusion("inclusion", "inclusion", Building::inclusion),
+		fuel("fuelId", "f_fuel", Building::fuel));
+
+	static final List<FeatureColumn<Street>> STREETS = List.of(
+		string("name", "name", Street::name),
+		inclusion("inclusion", "inclusion", Street::inclusion));
+
+	/// The type of the values of a column. The setter of a column takes a
+	/// value of the corresponding Java type; for fuels, this is the [Fuel]
+	/// entity and not its ID.
+	enum Kind {
+		STRING, DOUBLE, INT, BOOLEAN, INCLUSION, FUEL
+	}
+
+	private static <T extends BaseEntity> FeatureColumn<T> string(
+		String property, String name, BiConsumer<T, String> setter
+	) {
+		return new FeatureColumn<>(
+			property, name, Kind.STRING, (e, v) -> setter.accept(e, (String) v));
+	}
+
+	private static <T extends BaseEntity> FeatureColumn<T> real(
+		String property, String name, BiConsumer<T, Double> setter
+	) {
+		return new FeatureColumn<>(
+			property, name, Kind.DOUBLE, (e, v) -> setter.accept(e, (Double) v));
+	}
+
+	private static <T extends BaseEntity> FeatureColumn<T> integer(
+		String property, String name, BiConsumer<T, Integer> setter
+	) {
+		return new FeatureColumn<>(
+			property, name, Kind.INT, (e, v) -> setter.accept(e, (Integer) v));
+	}
+
+	private static <T extends BaseEntity> FeatureColumn<T> bool(
+		String property, String name, BiConsumer<T, Boolean> setter
+	) {
+		return new FeatureColumn<>(
+			property, name, Kind.BOOLEAN, (e, v) -> setter.accept(e, (Boolean) v));
+	}
+
+	private static <T extends BaseEntity> FeatureColumn<T> inclusion(
+		String property, String name, BiConsumer<T, Inclusion> setter
+	) {
+		return new FeatureColumn<>(
+			property, name, Kind.INCLUSION, (e, v) -> setter.accept(e, (Inclusion) v));
+	}
+
+	private static <T extends BaseEntity> FeatureColumn<T> fuel(
+		String property, String name, BiConsumer<T, Fuel> setter
+	) {
+		return new FeatureColumn<>(
+			property, name, Kind.FUEL, (e, v) -> setter.accept(e, (Fuel) v));
+	}
+
+	/// Converts the property value into the value of the entity field; for
+	/// fuels, this is the ID of the fuel.
+	Res<Object> valueOf(Object value) {
+		return switch (kind) {
+			case STRING -> value == null || value instanceof String
+				? Res.ofNullable(value)
+				: invalid(value);
+			case DOUBLE -> value instanceof Number n && Double.isFinite(n.doubleValue())
+				? Res.of(n.doubleValue())
+				: invalid(value);
+			case INT -> value instanceof Number n && isInt(n)
+				? Res.of(n.intValue())
+				: invalid(value);
+			case BOOLEAN -> value instanceof Boolean
+				? Res.of(value)
+				: invalid(value);
+			case INCLUSION -> {
+				if (value == null)
+					yield Res.ofNullable(null);
+				try {
+					yield Res.of(Inclusion.valueOf(value.toString()));
+				} catch (IllegalArgumentException e) {
+					yield invalid(value);
+				}
+			}
+			case FUEL -> value == null || (value instanceof Number n && isInt(n))
+				? Res.ofNullable(value == null ? null : ((Number) value).longValue())
+				: invalid(value);
+		};
+	}
+
+	/// Sets a value of [#valueOf] to the field of the given entity.
+	void set(T entity, Object value) {
+		setter.accept(entity, value);
+	}
+
+	/// Converts a value of [#valueOf] into the value of the column.
+	Object columnValueOf(Object value) {
+		return value instanceof Enum<?> e
+			? e.name()
+			: value;
+	}
+
+	private boolean isInt(Number n) {
+		double d = n.doubleValue();
+		return d == Math.rint(d)
+			&& d >= Integer.MIN_VALUE
+			&& d <= Integer.MAX_VALUE;
+	}
+
+	private Res<Object> invalid(Object value) {
+		return Res.error("invalid value of " + property + ": " + value);
+	}
+}
@@ -0,0 +1,348 @@
+package com.greendelta.bioheating.model.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.locationtech.jts.densify.Densifier;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import com.greendelta.bioheating.io.CoordinateTransformer;
+import com.greendelta.bioheating.model.BaseEntity;
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Street;
+import com.greendelta.bioheating.util.Res;
+
+/// A spatial index over the buildings and streets of a map. The envelopes of
+/// the features are indexed in the CRS of the map with an R-tree; a query
+/// bounding box in WGS 84 is projected into that CRS. The features are
+/// ordered by their IDs, which are used as cursors for pagination: a page
+/// contains the next features with an ID greater than the cursor. As the
+/// entity IDs never change, a cursor stays valid when the index is rebuilt.
+///
+/// The index keeps references to the features of the map. It is immutable
+/// and thread-safe but needs to be replaced when the map was modified.
+public final class FeatureIndex {
+
+	private static final GeometryFactory GEOMETRIES = new GeometryFactory();
+
+	private final STRtree tree;
+	private final long[] ids;
+	private final BaseEntity[] features;
+	private final Wgs84Cache wgs84;
+	private final CoordinateTransformer fromWgs84;
+
+	private FeatureIndex(
+		GeoMap map, Wgs84Cache wgs84, CoordinateTransformer fromWgs84
+	) {
+		this.wgs84 = wgs84;
+		this.fromWgs84 = fromWgs84;
+
+		var all = new ArrayList<BaseEntity>(
+			map.buildings().size() + map.streets().size());
+		all.addAll(map.buildings());
+		all.addAll(map.streets());
+		all.sort((a, b) -> Long.compare(a.id(), b.id()));
+		features = all.toArray(new BaseEntity[0]);
+		ids = new long[features.length];
+
+		tree = new STRtree();
+		for (int i = 0; i < features.length; i++) {
+			var f = features[i];
+			ids[i] = f.id();
+			var env = envelopeOf(coordinatesOf(f));
+			if (env != null) {
+				tree.insert(env, i);
+			}
+		}
+		tree.build();
+	}
+
+	public static Res<FeatureIndex> of(GeoMap map) {
+		var wgs84 = Wgs84Cache.of(map);
+		return wgs84.hasError()
+			? wgs84.castError()
+			: of(map, wgs84.value());
+	}
+
+	/// Creates the index of the map that uses the given cache for the
+	/// projected coordinates of the features.
+	public static Res<FeatureIndex> of(GeoMap map, Wgs84Cache wgs84) {
+		if (map == null)
+			return Res.error("map is null");
+		if (wgs84 == null || !Objects.equals(wgs84.crs(), map.crs()))
+			return Res.error("no WGS 84 cache for the map CRS provided");
+		var fromWgs84 = CoordinateTransformer.fromWgs84To(map.crs());
+		if (fromWgs84.hasError())
+			return fromWgs84.wrapError("failed to create transformer for map CRS");
+		return Res.of(new FeatureIndex(map, wgs84, fromWgs84.value()));
+	}
+
+	/// Parses a bounding box in the format `minLon,minLat,maxLon,maxLat`.
+	public static Res<Envelope> parseBBox(String s) {
+		if (s == null)
+			return Res.error("no bounding box provided");
+		var parts = s.split(",");
+		if (parts.length != 4)
+			return Res.error("invalid bounding box: " + s);
+		try {
+			double minX = Double.parseDouble(parts[0].strip());
+			double minY = Double.parseDouble(parts[1].strip());
+			double maxX = Double.parseDouble(parts[2].strip());
+			double maxY = Double.parseDouble(parts[3].strip());
+			if (minX > maxX || minY > maxY)
+				return Res.error("invalid bounding box: " + s);
+			return Res.of(new Envelope(minX, maxX, minY, maxY));
+		} catch (NumberFormatException e) {
+			return Res.error("invalid bounding box: " + s);
+		}
+	}
+
+	/// Creates a polygon from the given bounding box in WGS 84.
+	public static Res<Polygon> areaOf(Envelope bbox) {
+		if (bbox == null || bbox.getWidth() <= 0 || bbox.getHeight() <= 0)
+			return Res.error("the bounding box is empty");
+		return Res.of((Polygon) GEOMETRIES.toGeometry(bbox));
+	}
+
+	/// Creates a polygon from the given packed ring `[lon0, lat0, ...]` in
+	/// WGS 84. The ring is closed if necessary.
+	public static Res<Polygon> areaOf(double[] ring) {
+		if (ring == null || ring.length < 6)
+			return Res.error("a polygon needs at least 3 points");
+		int n = ring.length / 2;
+		boolean closed = ring[0] == ring[2 * n - 2] && ring[1] == ring[2 * n - 1];
+		var cs = new Coordinate[closed ? n : n + 1];
+		for (int i = 0; i < n; i++) {
+			cs[i] = new Coordinate(ring[2 * i], ring[2 * i + 1]);
+		}
+		if (!closed) {
+			cs[n] = cs[0].copy();
+		}
+		if (cs.length < 4)
+			return Res.error("a polygon needs at least 3 points");
+		return Res.of(GEOMETRIES.createPolygon(cs));
+	}
+
+	public int size() {
+		return features.length;
+	}
+
+	Wgs84Cache wgs84() {
+		return wgs84;
+	}
+
+	/// Passes the features that intersect the given bounding box in WGS 84
+	/// to the given function, ordered by their IDs.
+	void forEach(Envelope bbox, Consumer<BaseEntity> fn) {
+		var env = projectBBox(bbox);
+		if (env.hasError())
+			return;
+		var positions = new IntBuffer();
+		tree.query(env.value(), item -> positions.add((Integer) item));
+		for (int pos : positions.toSortedArray()) {
+			fn.accept(features[pos]);
+		}
+	}
+
+	/// Returns the next page of features that intersect the given bounding
+	/// box in WGS 84. If the bounding box is `null`, all features are
+	/// returned page by page. The cursor is the ID of the last feature of the
+	/// previous page or `0` for the first page.
+	public Res<FeaturePage> query(Envelope bbox, long cursor, int limit) {
+		if (limit <= 0)
+			return Res.error("invalid page limit: " + limit);
+
+		int[] hits;
+		if (bbox == null) {
+			hits = new int[features.length];
+			Arrays.setAll(hits, i -> i);
+		} else {
+			var env = projectBBox(bbox);
+			if (env.hasError())
+				return env.castError();
+			var positions = new IntBuffer();
+			tree.query(env.value(), item -> positions.add((Integer) item));
+			hits = positions.toSortedArray();
+		}
+
+		// the first hit after the cursor
+		int start = 0;
+		if (cursor > 0) {
+			int pos = Arrays.binarySearch(ids, cursor);
+			int after = pos >= 0 ? pos + 1 : -pos - 1;
+			start = Arrays.binarySearch(hits, after);
+			if (start < 0) {
+				start = -start - 1;
+			}
+		}
+
+		var page = new ArrayList<GeoFeature>(Math.min(limit, hits.length - start));
+		int i = start;
+		for (; i < hits.length && page.size() < limit; i++) {
+			var f = featureOf(features[hits[i]]);
+			if (!f.hasError()) {
+				page.add(f.value());
+			}
+		}
+		Long next = i < hits.length
+			? ids[hits[i - 1]]
+			: null;
+		return Res.of(new FeaturePage(page, hits.length, next));
+	}
+
+	/// Selects the buildings and streets that intersect the given area in
+	/// WGS 84. The candidates are taken from the R-tree and then tested
+	/// against the exact area, projected into the CRS of the map.
+	public Res<Selection> select(Polygon area) {
+		if (area == null || area.isEmpty())
+			return Res.error("no area provided");
+		var projected = projectArea(area);
+		if (projected.hasError())
+			return projected.castError();
+		PreparedGeometry prepared = PreparedGeometryFactory.prepare(projected.value());
+
+		var positions = new IntBuffer();
+		tree.query(
+			projected.value().getEnvelopeInternal(),
+			item -> positions.add((Integer) item));
+		var buildings = new ArrayList<Long>();
+		var streets = new ArrayList<Long>();
+		for (int pos : positions.toSortedArray()) {
+			var f = features[pos];
+			if (!intersects(prepared, f))
+				continue;
+			if (f instanceof Building) {
+				buildings.add(f.id());
+			} else if (f instanceof Street) {
+				streets.add(f.id());
+			}
+		}
+		return Res.of(new Selection(
+			buildings.stream().mapToLong(Long::longValue).toArray(),
+			streets.stream().mapToLong(Long::longValue).toArray()));
+	}
+
+	private static boolean intersects(PreparedGeometry area, BaseEntity f) {
+		var cs = coordinatesOf(f);
+		if (cs == null || cs.length == 0)
+			return false;
+		try {
+			if (f instanceof Building
+				&& cs.length >= 4
+				&& cs[0].equals2D(cs[cs.length - 1]))
+				return area.intersects(GEOMETRIES.createPolygon(cs));
+			return cs.length >= 2
+				? area.intersects(GEOMETRIES.createLineString(cs))
+				: area.intersects(GEOMETRIES.createPoint(cs[0]));
+		} catch (RuntimeException e) {
+			// invalid geometries, e.g. with NaN values or self-intersections
+			var env = envelopeOf(cs);
+			return env != null
+				&& area.getGeometry().getEnvelopeInternal().intersects(env);
+		}
+	}
+
+	/// Projects the area into the CRS of the map. The edges are densified
+	/// before, as they are curves in the projected CRS.
+	private Res<Polygon> projectArea(Polygon area) {
+		var env = area.getEnvelopeInternal();
+		double tolerance = Math.max(env.getWidth(), env.getHeight()) / 32;
+		var densified = tolerance > 0
+			? (Polygon) Densifier.densify(area, tolerance)
+			: area;
+		var shell = projectRing(densified.getExteriorRing());
+		if (shell.hasError())
+			return shell.castError();
+		var holes = new LinearRing[densified.getNumInteriorRing()];
+		for (int i = 0; i < holes.length; i++) {
+			var hole = projectRing(densified.getInteriorRingN(i));
+			if (hole.hasError())
+				return hole.castError();
+			holes[i] = hole.value();
+		}
+		return Res.of(GEOMETRIES.createPolygon(shell.value(), holes));
+	}
+
+	private Res<LinearRing> projectRing(LinearRing ring) {
+		var projected = fromWgs84.transform(ring.getCoordinates());
+		if (projected.hasError())
+			return projected.wrapError("failed to project area");
+		return Res.of(GEOMETRIES.createLinearRing(projected.value()));
+	}
+
+	private Res<GeoFeature> featureOf(BaseEntity e) {
+		return switch (e) {
+			case Building b -> GeoFeature.of(b, wgs84);
+			case Street s -> GeoFeature.of(s, wgs84);
+			default -> Res.error("unknown feature type: " + e);
+		};
+	}
+
+	/// Projects the bounding box into the CRS of the map. As the sides of
+	/// the box are curves in the projected CRS, they are sampled at multiple
+	/// points to get an enclosing envelope.
+	private Res<Envelope> projectBBox(Envelope bbox) {
+		int n = 8;
+		var points = new Coordinate[4 * n];
+		double w = bbox.getWidth() / n;
+		double h = bbox.getHeight() / n;
+		for (int i = 0; i < n; i++) {
+			points[i] = new Coordinate(bbox.getMinX() + i * w, bbox.getMinY());
+			points[n + i] = new Coordinate(bbox.getMaxX(), bbox.getMinY() + i * h);
+			points[2 * n + i] = new Coordinate(bbox.getMaxX() - i * w, bbox.getMaxY());
+			points[3 * n + i] = new Coordinate(bbox.getMinX(), bbox.getMaxY() - i * h);
+		}
+		var projected = fromWgs84.transform(points);
+		if (projected.hasError())
+			return projected.wrapError("failed to project bounding box");
+		var env = envelopeOf(projected.value());
+		return env != null
+			? Res.of(env)
+			: Res.error("failed to project bounding box");
+	}
+
+	private static Coordinate[] coordinatesOf(BaseEntity e) {
+		return switch (e) {
+			case Building b -> b.coordinates();
+			case Street s -> s.coordinates();
+			default -> null;
+		};
+	}
+
+	private static Envelope envelopeOf(Coordinate[] cs) {
+		if (cs == null || cs.length == 0)
+			return null;
+		var env = new Envelope();
+		for (var c : cs) {
+			if (Double.isFinite(c.x) && Double.isFinite(c.y)) {
+				env.expandToInclude(c.x, c.y);
+			}
+		}
+		return env.isNull() ? null : env;
+	}
+
+	/// A page of features. `count` is the total number of features that
+	/// match the query and `next` the cursor of the next page, which is
+	/// `null` when this is the last page.
+	public record FeaturePage(List<GeoFeature> features, int count, Long next) {
+	}
+
+	/// The IDs of the selected buildings and streets, in ascending order.
+	public record Selection(long[] buildings, long[] streets) {
+
+		public int size() {
+			return buildings.length + streets.length;
+		}
+	}
+}
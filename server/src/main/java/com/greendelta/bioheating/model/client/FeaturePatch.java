@@ -0,0 +1,180 @@
+package com.greendelta.bioheating.model.client;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.greendelta.bioheating.model.BaseEntity;
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.Database;
+import com.greendelta.bioheating.model.Fuel;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Street;
+import com.greendelta.bioheating.util.Res;
+
+/// Changed properties of map features that are written with batched SQL
+/// updates, without loading and merging the whole map. Each change has the
+/// same form as the properties of a [GeoFeature], with the type and ID of
+/// the feature and the changed values, e.g.:
+///
+/// ```json
+/// [{"@type": "building", "id": 42, "inclusion": "EXCLUDED"}]
+/// ```
+///
+/// Unknown properties are ignored, so that complete feature properties can
+/// be sent as well. The changes are grouped by the set of changed columns,
+/// and each group is written with a single batched statement. Only features
+/// of the given map are updated.
+public final class FeaturePatch {
+
+	private final List<Change> changes;
+
+	private FeaturePatch(List<Change> changes) {
+		this.changes = changes;
+	}
+
+	public static Res<FeaturePatch> of(List<Map<String, Object>> changes) {
+		if (changes == null)
+			return Res.error("no changes provided");
+		var parsed = new ArrayList<Change>(changes.size());
+		for (var props : changes) {
+			if (props == null)
+				continue;
+			if (!(props.get("id") instanceof Number id))
+				return Res.error("feature ID missing");
+			var type = props.get("@type");
+			Res<Change> change;
+			if ("building".equals(type)) {
+				change = Change.of(Building.class, id.longValue(), FeatureColumn.BUILDINGS, props);
+			} else if ("street".equals(type)) {
+				change = Change.of(Street.class, id.longValue(), FeatureColumn.STREETS, props);
+			} else {
+				return Res.error("invalid feature type: " + type);
+			}
+			if (change.hasError())
+				return change.castError();
+			if (!change.value().columns.isEmpty()) {
+				parsed.add(change.value());
+			}
+		}
+		return Res.of(new FeaturePatch(parsed));
+	}
+
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	/// Checks that the fuels that are referenced by the changes exist. This
+	/// is a validation of the changes, like in [#of], but requires the
+	/// database.
+	public Res<Void> checkFuels(Database db) {
+		if (db == null)
+			return Res.error("no database provided");
+		var fuels = new HashSet<Long>();
+		for (var change : changes) {
+			change.fuelIds(fuels);
+		}
+		for (var fuelId : fuels) {
+			if (db.getForId(Fuel.class, fuelId) == null)
+				return Res.error("no fuel found for ID=" + fuelId);
+		}
+		return Res.VOID;
+	}
+
+	/// Writes the changes to the features of the given map and returns the
+	/// number of updated features. The changed features and the map are
+	/// evicted from the cache of the database.
+	public Res<Integer> applyTo(Database db, GeoMap map) {
+		if (db == null || map == null)
+			return Res.error("no database or map provided");
+		if (changes.isEmpty())
+			return Res.of(0);
+		var fuels = checkFuels(db);
+		if (fuels.hasError())
+			return fuels.castError();
+
+		try {
+			int count = db.executeBatches(batchesOf(map.id()));
+			for (var change : changes) {
+				db.evict(change.type, change.id);
+			}
+			db.evict(GeoMap.class, map.id());
+			return Res.of(count);
+		} catch (Exception e) {
+			return Res.error("failed to update features", e);
+		}
+	}
+
+	/// Returns the update statements with their parameters, grouped by the
+	/// changed columns.
+	Map<String, List<Object[]>> batchesOf(long mapId) {
+		var batches = new LinkedHashMap<String, List<Object[]>>();
+		for (var change : changes) {
+			var rows = batches.computeIfAbsent(change.sql(), sql -> new ArrayList<>());
+			rows.add(change.parametersOf(mapId));
+		}
+		return batches;
+	}
+
+	private record Change(
+		Class<? extends BaseEntity> type,
+		long id,
+		List<FeatureColumn<?>> columns,
+		List<Object> values
+	) {
+
+		static Res<Change> of(
+			Class<? extends BaseEntity> type, long id,
+			List<? extends FeatureColumn<?>> defs, Map<String, Object> props
+		) {
+			var columns = new ArrayList<FeatureColumn<?>>();
+			var values = new ArrayList<>();
+			for (var col : defs) {
+				if (!props.containsKey(col.property()))
+					continue;
+				var value = col.valueOf(props.get(col.property()));
+				if (value.hasError())
+					return value.castError();
+				columns.add(col);
+				values.add(value.value());
+			}
+			return Res.of(new Change(type, id, columns, values));
+		}
+
+		String sql() {
+			var table = type == Building.class
+				? "tbl_buildings"
+				: "tbl_streets";
+			var sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+			for (int i = 0; i < columns.size(); i++) {
+				if (i > 0) {
+					sql.append(", ");
+				}
+				sql.append(columns.get(i).name()).append(" = ?");
+			}
+			return sql.append(" WHERE id = ? AND f_map = ?").toString();
+		}
+
+		Object[] parametersOf(long mapId) {
+			var params = new Object[values.size() + 2];
+			for (int i = 0; i < values.size(); i++) {
+				params[i] = columns.get(i).columnValueOf(values.get(i));
+			}
+			params[values.size()] = id;
+			params[values.size() + 1] = mapId;
+			return params;
+		}
+
+		void fuelIds(Set<Long> ids) {
+			for (int i = 0; i < columns.size(); i++) {
+				if (columns.get(i).kind() == FeatureColumn.Kind.FUEL
+					&& values.get(i) instanceof Long fuelId) {
+					ids.add(fuelId);
+				}
+			}
+		}
+	}
+}
@@ -2,8 +2,8 @@ package com.greendelta.bioheating.model.client;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
-import com.greendelta.bioheating.io.CoordinateTransformer;
 import com.greendelta.bioheating.model.Building;
 import com.greendelta.bioheating.model.Street;
 import com.greendelta.bioheating.util.Res;
@@ -12,51 +12,61 @@ public record GeoFeature(
 	String type, Geometry geometry, Map<String, Object> properties
 ) {
 
-	static Res<GeoFeature> of(Building b, CoordinateTransformer wgs84) {
+	static Res<GeoFeature> of(Building b, Wgs84Cache wgs84) {
 		if (b == null || wgs84 == null)
-			return Res.error("no building or coordinate transformer");
-		var cs = wgs84.transform(b.coordinates());
-		if (cs.hasError())
-			return cs.wrapError("failed to project coordinates of building: " + b);
-		var polygon = Geometry.polygonOf(cs.value());
+			return Res.error("no building or WGS 84 cache");
+		var xy = wgs84.xyOf(b);
+		if (xy == null)
+			return Res.error("failed to project coordinates of building: " + b);
+		var polygon = Geometry.polygonOf(xy);
 		var props = new HashMap<String, Object>();
-		props.put("@type", "building");
-		props.put("id", b.id());
-		props.put("name", b.name());
-		props.put("roofType", b.roofType());
-		props.put("function", b.function());
-		props.put("height", b.height());
-		props.put("storeys", b.storeys());
-		props.put("groundArea", b.groundArea());
-		props.put("heatedArea", b.heatedArea());
-		props.put("volume", b.volume());
-		props.put("country", b.country());
-		props.put("locality", b.locality());
-		props.put("postalCode", b.postalCode());
-		props.put("street", b.street());
-		props.put("streetNumber", b.streetNumber());
-		props.put("climateZone", b.climateZone());
-		props.put("heatDemand", b.heatDemand());
-		props.put("isHeated", b.isHeated());
-		props.put("inclusion", b.inclusion());
-		if (b.fuel() != null) {
-			props.put("fuelId", b.fuel().id());
-		}
+		propertiesOf(b, props::put);
 		return Res.of(new GeoFeature("Feature", polygon, props));
 	}
 
-	static Res<GeoFeature> of(Street s, CoordinateTransformer wgs84) {
+	static Res<GeoFeature> of(Street s, Wgs84Cache wgs84) {
 		if (s == null || wgs84 == null)
-			return Res.error("no street or coordinate transformer");
-		var cs = wgs84.transform(s.coordinates());
-		if (cs.hasError())
-			return cs.wrapError("failed to project coordinates of street: " + s);
-		var line = Geometry.lineOf(cs.value());
+			return Res.error("no street or WGS 84 cache");
+		var xy = wgs84.xyOf(s);
+		if (xy == null)
+			return Res.error("failed to project coordinates of street: " + s);
+		var line = Geometry.lineOf(xy);
 		var props = new HashMap<String, Object>();
-		props.put("@type", "street");
-		props.put("id", s.id());
-		props.put("name", s.name());
-		props.put("inclusion", s.inclusion());
+		propertiesOf(s, props::put);
 		return Res.of(new GeoFeature("Feature", line, props));
 	}
+
+	/// Passes the feature properties of the building to the given function.
+	static void propertiesOf(Building b, BiConsumer<String, Object> fn) {
+		fn.accept("@type", "building");
+		fn.accept("id", b.id());
+		fn.accept("name", b.name());
+		fn.accept("roofType", b.roofType());
+		fn.accept("function", b.function());
+		fn.accept("height", b.height());
+		fn.accept("storeys", b.storeys());
+		fn.accept("groundArea", b.groundArea());
+		fn.accept("heatedArea", b.heatedArea());
+		fn.accept("volume", b.volume());
+		fn.accept("country", b.country());
+		fn.accept("locality", b.locality());
+		fn.accept("postalCode", b.postalCode());
+		fn.accept("street", b.street());
+		fn.accept("streetNumber", b.streetNumber());
+		fn.accept("climateZone", b.climateZone());
+		fn.accept("heatDemand", b.heatDemand());
+		fn.accept("isHeated", b.isHeated());
+		fn.accept("inclusion", b.inclusion());
+		if (b.fuel() != null) {
+			fn.accept("fuelId", b.fuel().id());
+		}
+	}
+
+	/// Passes the feature properties of the street to the given function.
+	static void propertiesOf(Street s, BiConsumer<String, Object> fn) {
+		fn.accept("@type", "street");
+		fn.accept("id", s.id());
+		fn.accept("name", s.name());
+		fn.accept("inclusion", s.inclusion());
+	}
 }
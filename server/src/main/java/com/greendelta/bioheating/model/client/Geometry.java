@@ -1,15 +1,25 @@
 package com.greendelta.bioheating.model.client;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import org.locationtech.jts.geom.Coordinate;
+import java.io.IOException;
+import java.util.Arrays;
 
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.greendelta.bioheating.model.client.Geometry.GeoLine;
 import com.greendelta.bioheating.model.client.Geometry.GeoPolygon;
 
+/// A GeoJSON geometry. The coordinates are stored as packed arrays
+/// `[x0, y0, x1, y1, ...]` and are only expanded into the nested GeoJSON
+/// arrays when they are written.
 @JsonTypeInfo(
 	use = JsonTypeInfo.Id.NAME,
 	include = JsonTypeInfo.As.PROPERTY,
@@ -21,27 +31,120 @@ import com.greendelta.bioheating.model.client.Geometry.GeoPolygon;
 })
 public sealed interface Geometry {
 
-	static GeoPolygon polygonOf(Coordinate[] cs) {
-		var ring = new ArrayList<List<Double>>(cs.length);
-		for (var c : cs) {
-			ring.add(List.of(c.x, c.y));
+	/// Creates a polygon with the packed coordinates as exterior ring.
+	static GeoPolygon polygonOf(double[] xy) {
+		return new GeoPolygon(xy);
+	}
+
+	static GeoLine lineOf(double[] xy) {
+		return new GeoLine(xy);
+	}
+
+	record GeoPolygon(
+		@JsonSerialize(using = RingSerializer.class)
+		@JsonDeserialize(using = RingDeserializer.class)
+		double[] coordinates
+	) implements Geometry {
+	}
+
+	record GeoLine(
+		@JsonSerialize(using = PointsSerializer.class)
+		@JsonDeserialize(using = PointsDeserializer.class)
+		double[] coordinates
+	) implements Geometry {
+	}
+
+	/// Writes packed coordinates as array of points: `[[x0, y0], ...]`.
+	class PointsSerializer extends JsonSerializer<double[]> {
+
+		@Override
+		public void serialize(
+			double[] xy, JsonGenerator gen, SerializerProvider provider
+		) throws IOException {
+			writePoints(xy, xy.length / 2, gen);
+		}
+
+		static void writePoints(
+			double[] xy, int n, JsonGenerator gen
+		) throws IOException {
+			gen.writeStartArray();
+			for (int i = 0; i < 2 * n; i += 2) {
+				gen.writeStartArray();
+				gen.writeNumber(xy[i]);
+				gen.writeNumber(xy[i + 1]);
+				gen.writeEndArray();
+			}
+			gen.writeEndArray();
 		}
-		return new GeoPolygon(List.of(ring));
 	}
 
-	static GeoLine lineOf(Coordinate[] cs) {
-		var line = new ArrayList<List<Double>>(cs.length);
-		for (var c : cs) {
-			line.add(List.of(c.x, c.y));
+	/// Writes packed coordinates as polygon with a single ring:
+	/// `[[[x0, y0], ...]]`.
+	class RingSerializer extends JsonSerializer<double[]> {
+
+		@Override
+		public void serialize(
+			double[] xy, JsonGenerator gen, SerializerProvider provider
+		) throws IOException {
+			gen.writeStartArray();
+			PointsSerializer.writePoints(xy, xy.length / 2, gen);
+			gen.writeEndArray();
 		}
-		return new GeoLine(line);
 	}
 
-	record GeoPolygon(List<List<List<Double>>> coordinates)
-		implements Geometry {
+	/// Reads an array of points `[[x0, y0], ...]` into packed coordinates.
+	class PointsDeserializer extends JsonDeserializer<double[]> {
+
+		@Override
+		public double[] deserialize(
+			JsonParser parser, DeserializationContext ctx
+		) throws IOException {
+			return readPoints(parser, ctx);
+		}
+
+		static double[] readPoints(
+			JsonParser parser, DeserializationContext ctx
+		) throws IOException {
+			if (!parser.isExpectedStartArrayToken())
+				return ctx.reportInputMismatch(double[].class, "expected an array of points");
+			var xy = new double[32];
+			int size = 0;
+			while (parser.nextToken() == JsonToken.START_ARRAY) {
+				if (size + 2 > xy.length) {
+					xy = Arrays.copyOf(xy, xy.length * 2);
+				}
+				parser.nextToken();
+				xy[size++] = parser.getDoubleValue();
+				parser.nextToken();
+				xy[size++] = parser.getDoubleValue();
+				// skip further ordinates like z-values
+				while (parser.nextToken() != JsonToken.END_ARRAY) {
+					parser.skipChildren();
+				}
+			}
+			return Arrays.copyOf(xy, size);
+		}
 	}
 
-	record GeoLine(List<List<Double>> coordinates)
-		implements Geometry {
+	/// Reads the exterior ring of a polygon `[[[x0, y0], ...], ...]` into
+	/// packed coordinates; interior rings are skipped.
+	class RingDeserializer extends JsonDeserializer<double[]> {
+
+		@Override
+		public double[] deserialize(
+			JsonParser parser, DeserializationContext ctx
+		) throws IOException {
+			if (!parser.isExpectedStartArrayToken())
+				return ctx.reportInputMismatch(double[].class, "expected an array of rings");
+			double[] shell = null;
+			while (parser.nextToken() == JsonToken.START_ARRAY) {
+				if (shell == null) {
+					shell = PointsDeserializer.readPoints(parser, ctx);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return shell != null ? shell : new double[0];
+		}
 	}
 }
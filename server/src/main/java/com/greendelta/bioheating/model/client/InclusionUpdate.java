@@ -0,0 +1,93 @@
+package com.greendelta.bioheating.model.client;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Polygon;
+
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.Database;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Inclusion;
+import com.greendelta.bioheating.model.Street;
+import com.greendelta.bioheating.util.Res;
+
+/// Sets the inclusion of all buildings and streets of a map that intersect
+/// an area, e.g. to exclude a whole neighbourhood. The features are selected
+/// with the spatial index of the map and updated with one set-based
+/// statement per table, instead of one update per feature as with a
+/// [FeaturePatch].
+public final class InclusionUpdate {
+
+	private final Inclusion inclusion;
+	private final long[] buildings;
+	private final long[] streets;
+
+	private InclusionUpdate(Inclusion inclusion, long[] buildings, long[] streets) {
+		this.inclusion = inclusion;
+		this.buildings = buildings;
+		this.streets = streets;
+	}
+
+	/// Selects the features of the index that intersect the given area in
+	/// WGS 84.
+	public static Res<InclusionUpdate> of(
+		FeatureIndex index, Polygon area, Inclusion inclusion
+	) {
+		if (index == null || inclusion == null)
+			return Res.error("no index or inclusion provided");
+		var selection = index.select(area);
+		if (selection.hasError())
+			return selection.castError();
+		var s = selection.value();
+		return Res.of(new InclusionUpdate(inclusion, s.buildings(), s.streets()));
+	}
+
+	/// The number of selected features.
+	public int size() {
+		return buildings.length + streets.length;
+	}
+
+	/// Writes the inclusion to the selected features of the given map and
+	/// returns the number of updated features. The changed features and the
+	/// map are evicted from the cache of the database.
+	public Res<Integer> applyTo(Database db, GeoMap map) {
+		if (db == null || map == null)
+			return Res.error("no database or map provided");
+		if (size() == 0)
+			return Res.of(0);
+		try {
+			int count = db.executeBatches(batchesOf(map.id()));
+			for (long id : buildings) {
+				db.evict(Building.class, id);
+			}
+			for (long id : streets) {
+				db.evict(Street.class, id);
+			}
+			db.evict(GeoMap.class, map.id());
+			return Res.of(count);
+		} catch (Exception e) {
+			return Res.error("failed to update inclusions", e);
+		}
+	}
+
+	/// Returns the update statements with their parameters.
+	Map<String, List<Object[]>> batchesOf(long mapId) {
+		var batches = new LinkedHashMap<String, List<Object[]>>();
+		if (buildings.length > 0) {
+			batches.put(sqlOf("tbl_buildings"), List.<Object[]>of(
+				new Object[]{inclusion.name(), mapId, buildings}));
+		}
+		if (streets.length > 0) {
+			batches.put(sqlOf("tbl_streets"), List.<Object[]>of(
+				new Object[]{inclusion.name(), mapId, streets}));
+		}
+		return batches;
+	}
+
+	private static String sqlOf(String table) {
+		return "UPDATE " + table
+			+ " SET inclusion = ? WHERE f_map = ? AND id = ANY(?)";
+	}
+}
@@ -0,0 +1,31 @@
+package com.greendelta.bioheating.model.client;
+
+import java.util.Arrays;
+
+/// A growable buffer of primitive integers.
+class IntBuffer {
+
+	private int[] values = new int[64];
+	private int size;
+
+	void add(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	int[] toSortedArray() {
+		var array = toArray();
+		Arrays.sort(array);
+		return array;
+	}
+}
@@ -1,9 +1,11 @@
 package com.greendelta.bioheating.model.client;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.function.LongFunction;
 
+import com.greendelta.bioheating.model.BaseEntity;
 import com.greendelta.bioheating.model.Building;
 import com.greendelta.bioheating.model.Database;
 import com.greendelta.bioheating.model.Fuel;
@@ -13,13 +15,13 @@ import com.greendelta.bioheating.model.Street;
 
 public class MapSync {
 
-	private final Database db;
+	private final LongFunction<Fuel> fuels;
 	private final Map<Long, Building> buildings;
 	private final Map<Long, Street> streets;
 	private final ClientMap clientMap;
 
-	private MapSync(Database db, GeoMap map, ClientMap clientMap) {
-		this.db = db;
+	MapSync(LongFunction<Fuel> fuels, GeoMap map, ClientMap clientMap) {
+		this.fuels = fuels;
 		this.clientMap = clientMap;
 		buildings = new HashMap<>(map.buildings().size());
 		for (var b : map.buildings()) {
@@ -35,11 +37,11 @@ public class MapSync {
 		Database db, GeoMap map, ClientMap clientMap
 	) {
 		if (db != null && map != null && clientMap != null) {
-			new MapSync(db, map, clientMap).sync();
+			new MapSync(id -> db.getForId(Fuel.class, id), map, clientMap).sync();
 		}
 	}
 
-	private void sync() {
+	void sync() {
 		for (var f : clientMap.features()) {
 			var props = f.properties();
 			if (props == null)
@@ -58,85 +60,56 @@ public class MapSync {
 
 	private void syncBuilding(long id, Map<String, Object> props) {
 		var b = buildings.get(id);
-		if (b == null)
-			return;
-
-		syncString(props, "name", b::name);
-		syncString(props, "roofType", b::roofType);
-		syncString(props, "function", b::function);
-		syncDouble(props, "height", b::height);
-		syncInt(props, "storeys", b::storeys);
-		syncDouble(props, "groundArea", b::groundArea);
-		syncDouble(props, "heatedArea", b::heatedArea);
-		syncDouble(props, "volume", b::volume);
-		syncString(props, "country", b::country);
-		syncString(props, "locality", b::locality);
-		syncString(props, "postalCode", b::postalCode);
-		syncString(props, "street", b::street);
-		syncString(props, "streetNumber", b::streetNumber);
-		syncInt(props, "climateZone", b::climateZone);
-		syncDouble(props, "heatDemand", b::heatDemand);
-		syncBool(props, "isHeated", b::isHeated);
-		syncInclusion(props, b::inclusion);
-
-		if (props.get("fuelId") instanceof Number num) {
-			var fuel = db.getForId(Fuel.class, num.longValue());
-			b.fuel(fuel);
+		if (b != null) {
+			syncFields(b, FeatureColumn.BUILDINGS, props);
 		}
-
 	}
 
 	private void syncStreet(long id, Map<String, Object> props) {
 		var s = streets.get(id);
-		if (s == null)
-			return;
-		syncString(props, "name", s::name);
-		syncInclusion(props, s::inclusion);
-	}
-
-	private void syncString(
-		Map<String, Object> props, String key, Function<String, ?>setter) {
-		var value = props.get(key);
-		if (value instanceof String s) {
-			setter.apply(s);
+		if (s != null) {
+			syncFields(s, FeatureColumn.STREETS, props);
 		}
 	}
 
-	private void syncDouble(
-		Map<String, Object> props, String key, Function<Double, ?> setter) {
-		var value = props.get(key);
-		if (value instanceof Number num) {
-			setter.apply(num.doubleValue());
-		}
-	}
-
-	private void syncInt(
-		Map<String, Object> props, String key, Function<Integer, ?> setter) {
-		var value = props.get(key);
-		if (value instanceof Number) {
-			setter.apply(((Number) value).intValue());
-		}
-	}
-
-	private void syncBool(
-		Map<String, Object> props, String key, Function<Boolean, ?> setter) {
-		var value = props.get(key);
-		if (value instanceof Boolean b) {
-			setter.apply(b);
+	/// Sets the values of the given properties to the fields of the entity.
+	/// Numbers are converted into the type of the field, also by truncating
+	/// decimals for integer fields, and values of other types are ignored. A
+	/// fuel ID of a fuel that does not exist clears the fuel of a building.
+	private <T extends BaseEntity> void syncFields(
+		T entity, List<FeatureColumn<T>> columns, Map<String, Object> props
+	) {
+		for (var col : columns) {
+			var prop = props.get(col.property());
+			if (col.kind() == FeatureColumn.Kind.FUEL) {
+				if (prop instanceof Number num) {
+					col.set(entity, fuels.apply(num.longValue()));
+				}
+				continue;
+			}
+			var value = valueOf(col.kind(), prop);
+			if (value != null) {
+				col.set(entity, value);
+			}
 		}
 	}
 
-	private void syncInclusion(
-		Map<String, Object> props, Function<Inclusion, ?> setter) {
-		var value = props.get("inclusion");
-		if (value instanceof String) {
-			try {
-				var inclusion = Inclusion.valueOf((String) value);
-				setter.apply(inclusion);
-			} catch (IllegalArgumentException e) {
-				// ignore
+	private Object valueOf(FeatureColumn.Kind kind, Object prop) {
+		return switch (kind) {
+			case STRING -> prop instanceof String s ? s : null;
+			case DOUBLE -> prop instanceof Number num ? num.doubleValue() : null;
+			case INT -> prop instanceof Number num ? num.intValue() : null;
+			case BOOLEAN -> prop instanceof Boolean b ? b : null;
+			case INCLUSION -> {
+				if (!(prop instanceof String s))
+					yield null;
+				try {
+					yield Inclusion.valueOf(s);
+				} catch (IllegalArgumentException e) {
+					yield null;
+				}
 			}
-		}
+			case FUEL -> null;
+		};
 	}
-
 }
@@ -0,0 +1,24 @@
+package com.greendelta.bioheating.model.client;
+
+import com.greendelta.bioheating.model.Project;
+
+/// The header data of a project for project lists. It is a top-level type
+/// so that it can be created directly by a JPQL constructor expression, see
+/// [#QUERY].
+public record ProjectInfo(
+	long id, String name, String description
+) {
+
+	/// Selects the project infos of a user, passed as the first parameter,
+	/// without loading the projects or their maps.
+	public static final String QUERY = """
+		SELECT NEW com.greendelta.bioheating.model.client.ProjectInfo(
+			p.id, p.name, p.description)
+		FROM Project p WHERE p.user = ?1 ORDER BY p.id""";
+
+	public static ProjectInfo of(Project p) {
+		return new ProjectInfo(
+			p.id(), p.name(), p.description()
+		);
+	}
+}
@@ -0,0 +1,487 @@
+package com.greendelta.bioheating.model.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.Street;
+import com.greendelta.bioheating.util.Res;
+
+/// Encodes the features of a map as Mapbox Vector Tile (MVT, version 2) in
+/// the Web Mercator tiling scheme. A tile contains the layers `buildings`
+/// and `streets` with the same properties as the GeoJSON features of
+/// [GeoFeature].
+///
+/// The geometries are transformed into the tile coordinates with an extent
+/// of 4096 units, clipped to the tile with a small buffer, simplified, and
+/// quantized to integers. The simplification tolerance is fixed in tile
+/// units, so that the geometries are simplified more at lower zoom levels;
+/// features that collapse to less than a unit are dropped.
+public final class VectorTile {
+
+	public static final String CONTENT_TYPE = "application/vnd.mapbox-vector-tile";
+	public static final int MAX_ZOOM = 24;
+
+	static final int EXTENT = 4096;
+	private static final int BUFFER = 64;
+	private static final double TOLERANCE = 4;
+	private static final double MAX_LAT = 85.0511287798066;
+
+	private static final int LINESTRING = 2;
+	private static final int POLYGON = 3;
+
+	private final FeatureIndex index;
+	private final int z;
+	private final int x;
+	private final int y;
+	private final GeometryFactory factory = new GeometryFactory();
+
+	private VectorTile(FeatureIndex index, int z, int x, int y) {
+		this.index = index;
+		this.z = z;
+		this.x = x;
+		this.y = y;
+	}
+
+	/// Encodes the tile `z/x/y` of the features in the given index.
+	public static Res<byte[]> encode(FeatureIndex index, int z, int x, int y) {
+		if (index == null)
+			return Res.error("no feature index provided");
+		if (z < 0 || z > MAX_ZOOM)
+			return Res.error("invalid zoom level: " + z);
+		int n = 1 << z;
+		if (x < 0 || x >= n || y < 0 || y >= n)
+			return Res.error("invalid tile: " + z + "/" + x + "/" + y);
+		return new VectorTile(index, z, x, y).encode();
+	}
+
+	private Res<byte[]> encode() {
+		var buildings = new Layer("buildings");
+		var streets = new Layer("streets");
+		var wgs84 = index.wgs84();
+
+		var bbox = wgs84Bounds();
+		index.forEach(bbox, feature -> {
+			switch (feature) {
+				case Building b -> {
+					var geom = tileGeometryOf(wgs84.xyOf(b), true);
+					if (geom == null)
+						return;
+					var commands = encodeGeometry(geom);
+					if (commands.length == 0)
+						return;
+					var f = buildings.newFeature(b.id(), POLYGON, commands);
+					GeoFeature.propertiesOf(b, f::put);
+				}
+				case Street s -> {
+					var geom = tileGeometryOf(wgs84.xyOf(s), false);
+					if (geom == null)
+						return;
+					var commands = encodeGeometry(geom);
+					if (commands.length == 0)
+						return;
+					var f = streets.newFeature(s.id(), LINESTRING, commands);
+					GeoFeature.propertiesOf(s, f::put);
+				}
+				default -> {
+				}
+			}
+		});
+
+		var tile = new Proto();
+		for (var layer : List.of(buildings, streets)) {
+			if (!layer.features.isEmpty()) {
+				tile.writeBytes(3, layer.encode());
+			}
+		}
+		return Res.of(tile.toByteArray());
+	}
+
+	/// Returns the WGS 84 bounds of the tile, including the buffer.
+	private Envelope wgs84Bounds() {
+		double b = (double) BUFFER / EXTENT;
+		return new Envelope(
+			lonOf(x - b), lonOf(x + 1 + b),
+			latOf(y + 1 + b), latOf(y - b));
+	}
+
+	private double lonOf(double tileX) {
+		return tileX / (1 << z) * 360 - 180;
+	}
+
+	private double latOf(double tileY) {
+		double n = Math.PI * (1 - 2 * tileY / (1 << z));
+		double lat = Math.toDegrees(Math.atan(Math.sinh(n)));
+		return Math.max(-MAX_LAT, Math.min(MAX_LAT, lat));
+	}
+
+	/// Transforms the WGS 84 coordinates into a clipped and simplified
+	/// geometry in tile coordinates, or returns `null` if nothing is left of
+	/// it.
+	private Geometry tileGeometryOf(double[] xy, boolean polygon) {
+		if (xy == null || xy.length < (polygon ? 8 : 4))
+			return null;
+		var points = new Coordinate[xy.length / 2];
+		double scale = (double) (1 << z);
+		for (int i = 0; i < points.length; i++) {
+			double lat = Math.max(-MAX_LAT, Math.min(MAX_LAT, xy[2 * i + 1]));
+			double sin = Math.sin(Math.toRadians(lat));
+			double mx = (xy[2 * i] + 180) / 360;
+			double my = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+			points[i] = new Coordinate(
+				(mx * scale - x) * EXTENT,
+				(my * scale - y) * EXTENT);
+		}
+
+		try {
+			Geometry geom;
+			if (polygon) {
+				if (!points[0].equals2D(points[points.length - 1])) {
+					points = Arrays.copyOf(points, points.length + 1);
+					points[points.length - 1] = points[0].copy();
+				}
+				geom = factory.createPolygon(points);
+			} else {
+				geom = factory.createLineString(points);
+			}
+
+			var clip = new Envelope(-BUFFER, EXTENT + BUFFER, -BUFFER, EXTENT + BUFFER);
+			var env = geom.getEnvelopeInternal();
+			if (!clip.intersects(env))
+				return null;
+			if (!clip.contains(env)) {
+				geom = clip(geom, clip);
+			}
+			geom = DouglasPeuckerSimplifier.simplify(geom, TOLERANCE);
+			return geom.isEmpty() ? null : geom;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/// Clips the geometry to the envelope. Invalid geometries, for which the
+	/// intersection fails, are returned unclipped.
+	private Geometry clip(Geometry geom, Envelope clip) {
+		try {
+			return geom.intersection(factory.toGeometry(clip));
+		} catch (Exception e) {
+			return geom;
+		}
+	}
+
+	/// Encodes the geometry as MVT command sequence with quantized, delta
+	/// encoded coordinates. Returns an empty array when nothing is left after
+	/// the quantization.
+	static int[] encodeGeometry(Geometry geom) {
+		var commands = new Commands();
+		for (int i = 0; i < geom.getNumGeometries(); i++) {
+			var part = geom.getGeometryN(i);
+			if (part instanceof Polygon p) {
+				var shell = quantize(p.getExteriorRing().getCoordinates(), true);
+				if (shell == null || !commands.ring(shell, true))
+					continue;
+				for (int k = 0; k < p.getNumInteriorRing(); k++) {
+					var hole = quantize(p.getInteriorRingN(k).getCoordinates(), true);
+					if (hole != null) {
+						commands.ring(hole, false);
+					}
+				}
+			} else if (part instanceof LineString line) {
+				var points = quantize(line.getCoordinates(), false);
+				if (points != null) {
+					commands.line(points);
+				}
+			}
+		}
+		return commands.toArray();
+	}
+
+	/// Rounds the coordinates to integers and removes repeated points. For
+	/// rings, the closing point is removed. Returns `null` when the points
+	/// do not form a valid line or ring anymore.
+	private static int[] quantize(Coordinate[] cs, boolean ring) {
+		var xy = new int[2 * cs.length];
+		int n = 0;
+		for (var c : cs) {
+			int px = (int) Math.round(c.x);
+			int py = (int) Math.round(c.y);
+			if (n > 0 && xy[2 * n - 2] == px && xy[2 * n - 1] == py)
+				continue;
+			xy[2 * n] = px;
+			xy[2 * n + 1] = py;
+			n++;
+		}
+		if (ring) {
+			if (n > 1 && xy[0] == xy[2 * n - 2] && xy[1] == xy[2 * n - 1]) {
+				n--;
+			}
+			if (n < 3)
+				return null;
+		} else if (n < 2) {
+			return null;
+		}
+		return Arrays.copyOf(xy, 2 * n);
+	}
+
+	private static class Commands {
+
+		private final IntBuffer values = new IntBuffer();
+		private int cx;
+		private int cy;
+
+		void line(int[] xy) {
+			moveTo(xy[0], xy[1]);
+			lineTo(xy, 1, xy.length / 2);
+		}
+
+		/// Adds a ring; exterior rings must have a positive area in tile
+		/// coordinates (clockwise on screen, as the y-axis points down) and
+		/// interior rings a negative area. Returns `false` when the ring has no
+		/// area and was not added.
+		boolean ring(int[] xy, boolean exterior) {
+			long area = 0;
+			int n = xy.length / 2;
+			for (int i = 0; i < n; i++) {
+				int j = (i + 1) % n;
+				area += (long) xy[2 * i] * xy[2 * j + 1]
+					- (long) xy[2 * j] * xy[2 * i + 1];
+			}
+			if (area == 0)
+				return false;
+			if ((area > 0) != exterior) {
+				reverse(xy);
+			}
+			moveTo(xy[0], xy[1]);
+			lineTo(xy, 1, n);
+			add(command(7, 1));
+			return true;
+		}
+
+		private void moveTo(int px, int py) {
+			add(command(1, 1));
+			add(zigZag(px - cx));
+			add(zigZag(py - cy));
+			cx = px;
+			cy = py;
+		}
+
+		private void lineTo(int[] xy, int from, int to) {
+			add(command(2, to - from));
+			for (int i = from; i < to; i++) {
+				int px = xy[2 * i];
+				int py = xy[2 * i + 1];
+				add(zigZag(px - cx));
+				add(zigZag(py - cy));
+				cx = px;
+				cy = py;
+			}
+		}
+
+		private void add(int value) {
+			values.add(value);
+		}
+
+		int[] toArray() {
+			return values.toArray();
+		}
+
+		private static int command(int id, int count) {
+			return (id & 0x7) | (count << 3);
+		}
+
+		private static int zigZag(int n) {
+			return (n << 1) ^ (n >> 31);
+		}
+
+		private static void reverse(int[] xy) {
+			int n = xy.length / 2;
+			for (int i = 0, j = n - 1; i < j; i++, j--) {
+				int tx = xy[2 * i];
+				int ty = xy[2 * i + 1];
+				xy[2 * i] = xy[2 * j];
+				xy[2 * i + 1] = xy[2 * j + 1];
+				xy[2 * j] = tx;
+				xy[2 * j + 1] = ty;
+			}
+		}
+	}
+
+	private static class Layer {
+
+		private final String name;
+		private final Map<String, Integer> keys = new HashMap<>();
+		private final Map<Object, Integer> values = new HashMap<>();
+		private final List<String> keyList = new ArrayList<>();
+		private final List<Object> valueList = new ArrayList<>();
+		private final List<Feature> features = new ArrayList<>();
+
+		Layer(String name) {
+			this.name = name;
+		}
+
+		Feature newFeature(long id, int type, int[] geometry) {
+			var f = new Feature(this, id, type, geometry);
+			features.add(f);
+			return f;
+		}
+
+		private int keyOf(String key) {
+			return keys.computeIfAbsent(key, k -> {
+				keyList.add(k);
+				return keyList.size() - 1;
+			});
+		}
+
+		private int valueOf(Object value) {
+			return values.computeIfAbsent(value, v -> {
+				valueList.add(v);
+				return valueList.size() - 1;
+			});
+		}
+
+		byte[] encode() {
+			var layer = new Proto();
+			layer.writeVarint(15, 2);
+			layer.writeString(1, name);
+			for (var f : features) {
+				var feature = new Proto();
+				feature.writeVarint(1, f.id);
+				feature.writePacked(2, f.tags.toArray());
+				feature.writeVarint(3, f.type);
+				feature.writePacked(4, f.geometry);
+				layer.writeBytes(2, feature.toByteArray());
+			}
+			for (var key : keyList) {
+				layer.writeString(3, key);
+			}
+			for (var value : valueList) {
+				layer.writeBytes(4, encodeValue(value));
+			}
+			layer.writeVarint(5, EXTENT);
+			return layer.toByteArray();
+		}
+
+		private static byte[] encodeValue(Object value) {
+			var proto = new Proto();
+			switch (value) {
+				case String s -> proto.writeString(1, s);
+				case Double d -> proto.writeDouble(3, d);
+				case Integer i -> proto.writeVarint(6, Proto.zigZag(i));
+				case Long l -> proto.writeVarint(6, Proto.zigZag(l));
+				case Boolean b -> proto.writeVarint(7, b ? 1 : 0);
+				default -> proto.writeString(1, value.toString());
+			}
+			return proto.toByteArray();
+		}
+	}
+
+	private static class Feature {
+
+		private final Layer layer;
+		private final long id;
+		private final int type;
+		private final int[] geometry;
+		private final IntBuffer tags = new IntBuffer();
+
+		Feature(Layer layer, long id, int type, int[] geometry) {
+			this.layer = layer;
+			this.id = id;
+			this.type = type;
+			this.geometry = geometry;
+		}
+
+		/// Adds a property; `null` values are skipped as they cannot be
+		/// represented in MVT.
+		void put(String key, Object value) {
+			if (value == null)
+				return;
+			tags.add(layer.keyOf(key));
+			tags.add(layer.valueOf(value));
+		}
+	}
+
+	/// A minimal protocol buffers writer for the MVT messages.
+	private static class Proto {
+
+		private byte[] buffer = new byte[256];
+		private int size;
+
+		void writeVarint(int field, long value) {
+			tag(field, 0);
+			varint(value);
+		}
+
+		void writeDouble(int field, double value) {
+			tag(field, 1);
+			fixed(Double.doubleToLongBits(value), 8);
+		}
+
+		void writeString(int field, String value) {
+			writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		void writeBytes(int field, byte[] bytes) {
+			tag(field, 2);
+			varint(bytes.length);
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, buffer, size, bytes.length);
+			size += bytes.length;
+		}
+
+		void writePacked(int field, int[] values) {
+			if (values.length == 0)
+				return;
+			var packed = new Proto();
+			for (int v : values) {
+				packed.varint(v & 0xFFFFFFFFL);
+			}
+			writeBytes(field, packed.toByteArray());
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buffer, size);
+		}
+
+		static long zigZag(long n) {
+			return (n << 1) ^ (n >> 63);
+		}
+
+		private void tag(int field, int wireType) {
+			varint(((long) field << 3) | wireType);
+		}
+
+		private void varint(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[size++] = (byte) value;
+		}
+
+		private void fixed(long value, int bytes) {
+			ensure(bytes);
+			for (int i = 0; i < bytes; i++) {
+				buffer[size++] = (byte) (value >>> (8 * i));
+			}
+		}
+
+		private void ensure(int n) {
+			if (size + n > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + n));
+			}
+		}
+	}
+}
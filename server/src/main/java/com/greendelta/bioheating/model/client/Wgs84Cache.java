@@ -0,0 +1,95 @@
+package com.greendelta.bioheating.model.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import com.greendelta.bioheating.io.CoordinateTransformer;
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Street;
+import com.greendelta.bioheating.util.Res;
+
+/// Caches the coordinates of the features of a map projected to WGS 84 as
+/// packed arrays `[lon0, lat0, lon1, lat1, ...]`. The entries are keyed by
+/// the entity ID and a fingerprint of the coordinates in the map CRS, which
+/// acts as version of the geometry: when the coordinates of a feature change,
+/// its entry is replaced, but other changes of the feature, like updated
+/// properties, do not invalidate it. Thus, a cache can be reused across
+/// loads of the same map.
+///
+/// The returned arrays are shared and must not be modified.
+public final class Wgs84Cache {
+
+	private final String crs;
+	private final CoordinateTransformer wgs84;
+	private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+	private Wgs84Cache(String crs, CoordinateTransformer wgs84) {
+		this.crs = crs;
+		this.wgs84 = wgs84;
+	}
+
+	public static Res<Wgs84Cache> of(GeoMap map) {
+		var res = CoordinateTransformer.toWgs84From(map);
+		if (res.hasError())
+			return res.wrapError("failed to create transformer for map CRS");
+		return Res.of(new Wgs84Cache(map.crs(), res.value()));
+	}
+
+	/// The CRS of the map for which this cache was created.
+	public String crs() {
+		return crs;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	double[] xyOf(Building b) {
+		return xyOf(b.id(), b.coordinates());
+	}
+
+	double[] xyOf(Street s) {
+		return xyOf(s.id(), s.coordinates());
+	}
+
+	/// Returns the projected coordinates of the feature with the given ID,
+	/// or `null` if it has no coordinates or when the projection failed.
+	/// Features without ID, that are not stored yet, are not cached.
+	double[] xyOf(long id, Coordinate[] cs) {
+		if (cs == null || cs.length == 0)
+			return null;
+		long fingerprint = fingerprintOf(cs);
+		if (id != 0) {
+			var entry = entries.get(id);
+			if (entry != null && entry.fingerprint == fingerprint)
+				return entry.xy;
+		}
+		var xy = CoordinateTransformer.xyOf(cs, null);
+		if (wgs84.transform(xy).hasError())
+			return null;
+		if (id != 0) {
+			entries.put(id, new Entry(fingerprint, xy));
+		}
+		return xy;
+	}
+
+	private static long fingerprintOf(Coordinate[] cs) {
+		long h = cs.length;
+		for (var c : cs) {
+			h = mix(h, Double.doubleToLongBits(c.x));
+			h = mix(h, Double.doubleToLongBits(c.y));
+		}
+		return h;
+	}
+
+	private static long mix(long h, long bits) {
+		h ^= bits;
+		h *= 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 32);
+	}
+
+	private record Entry(long fingerprint, double[] xy) {
+	}
+}
@@ -0,0 +1,167 @@
+package com.greendelta.bioheating.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.client.FeatureIndex;
+import com.greendelta.bioheating.model.client.VectorTile;
+import com.greendelta.bioheating.model.client.Wgs84Cache;
+import com.greendelta.bioheating.util.Res;
+
+/// Holds the spatial indices, vector tiles, and projected WGS 84 coordinates
+/// of the recently used maps. An index is created when a map is queried the
+/// first time, and a tile when it is requested the first time. Both are kept
+/// in LRU caches until the map is modified. The WGS 84 coordinates are kept
+/// over modifications of a map, as their entries are only replaced when the
+/// coordinates of a feature change.
+///
+/// The cached data has a version that is incremented when a map is
+/// invalidated; for each map, the version of its last invalidation is
+/// stored. The version must be read with [#version] before a map is loaded
+/// from the database and passed to [#indexOf] and [#tileOf]. An index or
+/// tile is then only cached when its map was not invalidated after that
+/// version, so that a map that was loaded before a concurrent modification
+/// does not put a stale entry into the cache.
+@Service
+public class MapService {
+
+	private final Map<Long, Wgs84Cache> geometries;
+	private final Map<Long, FeatureIndex> indices;
+	private final Map<TileKey, byte[]> tiles;
+	private final AtomicLong version = new AtomicLong();
+	private final Map<Long, Long> invalidations = new ConcurrentHashMap<>();
+
+	public MapService(
+		@Value("${bioheating.maps.cache-size:16}") int cacheSize,
+		@Value("${bioheating.maps.tile-cache-size:4096}") int tileCacheSize
+	) {
+		this.geometries = lru(cacheSize);
+		this.indices = lru(cacheSize);
+		this.tiles = lru(tileCacheSize);
+	}
+
+	private static <K, V> Map<K, V> lru(int size) {
+		int maxSize = Math.max(1, size);
+		return new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> e) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/// Returns the cache of the projected WGS 84 coordinates of the map.
+	public Res<Wgs84Cache> wgs84Of(GeoMap map) {
+		if (map == null)
+			return Res.error("project has no map");
+		synchronized (geometries) {
+			var cache = geometries.get(map.id());
+			if (cache != null && Objects.equals(cache.crs(), map.crs()))
+				return Res.of(cache);
+		}
+		var res = Wgs84Cache.of(map);
+		if (res.hasError())
+			return res;
+		synchronized (geometries) {
+			geometries.put(map.id(), res.value());
+		}
+		return res;
+	}
+
+	/// Returns the current version of the cached data. It needs to be read
+	/// before a map is loaded for which an index or tile is requested.
+	public long version() {
+		return version.get();
+	}
+
+	/// Returns the index of the given map, which was loaded at the given
+	/// version of the cached data.
+	public Res<FeatureIndex> indexOf(GeoMap map, long version) {
+		if (map == null)
+			return Res.error("project has no map");
+		synchronized (indices) {
+			var index = indices.get(map.id());
+			if (index != null)
+				return Res.of(index);
+		}
+		var wgs84 = wgs84Of(map);
+		if (wgs84.hasError())
+			return wgs84.castError();
+		var res = FeatureIndex.of(map, wgs84.value());
+		if (res.hasError())
+			return res;
+		synchronized (indices) {
+			if (isCurrent(map, version)) {
+				indices.put(map.id(), res.value());
+			}
+		}
+		return res;
+	}
+
+	/// Returns the vector tile `z/x/y` in the MVT format of the given map,
+	/// which was loaded at the given version of the cached data.
+	public Res<byte[]> tileOf(GeoMap map, long version, int z, int x, int y) {
+		if (map == null)
+			return Res.error("project has no map");
+		var key = new TileKey(map.id(), z, x, y);
+		synchronized (tiles) {
+			var tile = tiles.get(key);
+			if (tile != null)
+				return Res.of(tile);
+		}
+		var index = indexOf(map, version);
+		if (index.hasError())
+			return index.castError();
+		var res = VectorTile.encode(index.value(), z, x, y);
+		if (res.hasError())
+			return res;
+		synchronized (tiles) {
+			if (isCurrent(map, version)) {
+				tiles.put(key, res.value());
+			}
+		}
+		return res;
+	}
+
+	/// Removes the cached index and tiles of the given map. This needs to be
+	/// called whenever the features of a map are modified.
+	public void invalidate(GeoMap map) {
+		if (map == null)
+			return;
+		// record the invalidation first, so that indices and tiles of maps
+		// that were loaded before are not cached afterwards
+		invalidations.merge(map.id(), version.incrementAndGet(), Math::max);
+		synchronized (indices) {
+			indices.remove(map.id());
+		}
+		synchronized (tiles) {
+			tiles.keySet().removeIf(key -> key.mapId() == map.id());
+		}
+	}
+
+	/// Removes all cached data of the given map, e.g. when it was deleted.
+	public void remove(GeoMap map) {
+		if (map == null)
+			return;
+		invalidate(map);
+		synchronized (geometries) {
+			geometries.remove(map.id());
+		}
+	}
+
+	/// Returns `true` when the map was not invalidated after the given
+	/// version.
+	private boolean isCurrent(GeoMap map, long version) {
+		return invalidations.getOrDefault(map.id(), 0L) <= version;
+	}
+
+	private record TileKey(long mapId, int z, int x, int y) {
+	}
+}
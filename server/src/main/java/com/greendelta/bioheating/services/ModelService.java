@@ -0,0 +1,62 @@
+package com.greendelta.bioheating.services;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.greendelta.bioheating.io.HeatPredictor;
+import com.greendelta.bioheating.io.ModelRegistry;
+import com.greendelta.bioheating.util.Res;
+import com.greendelta.bioheating.util.Strings;
+
+/// Provides the application-wide model registry of the imports. When a model
+/// folder is configured, it is checked regularly for a new `model.json` file
+/// which then replaces the current heat demand model.
+@Service
+public class ModelService {
+
+	private final ModelRegistry registry;
+	private final ModelRegistry.Engine engine;
+	private final boolean withReload;
+
+	public ModelService(
+		@Value("${bioheating.models.dir:}") String modelDir,
+		@Value("${bioheating.predictor:xgboost}") String predictor
+	) {
+		this.withReload = Strings.isNotNil(modelDir);
+		this.registry = withReload
+			? ModelRegistry.of(Path.of(modelDir))
+			: ModelRegistry.getDefault();
+		this.engine = ModelRegistry.Engine.of(predictor);
+	}
+
+	public ModelRegistry registry() {
+		return registry;
+	}
+
+	/// Returns the heat demand predictor that is configured with the
+	/// `bioheating.predictor` property: `xgboost` for the native XGBoost
+	/// library or `java` for the pure Java evaluation of the same model.
+	public Res<HeatPredictor> predictor() {
+		return registry.predictor(engine);
+	}
+
+	@Scheduled(
+		fixedDelayString = "${bioheating.models.reload-seconds:60}",
+		timeUnit = TimeUnit.SECONDS)
+	public void reload() {
+		if (!withReload)
+			return;
+		var res = registry.reload();
+		var log = LoggerFactory.getLogger(getClass());
+		if (res.hasError()) {
+			log.error("failed to reload heat demand model: {}", res.error());
+		} else if (res.value()) {
+			log.info("reloaded heat demand model");
+		}
+	}
+}
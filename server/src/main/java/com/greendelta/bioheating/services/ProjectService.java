@@ -5,46 +5,146 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Polygon;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.greendelta.bioheating.io.CityGmlImport;
 import com.greendelta.bioheating.model.Database;
+import com.greendelta.bioheating.model.Database.FetchPlan;
+import com.greendelta.bioheating.model.Inclusion;
 import com.greendelta.bioheating.model.Project;
 import com.greendelta.bioheating.model.User;
+import com.greendelta.bioheating.model.client.ClientProjectWriter;
+import com.greendelta.bioheating.model.client.FeaturePatch;
+import com.greendelta.bioheating.model.client.FeatureIndex;
+import com.greendelta.bioheating.model.client.FeatureIndex.FeaturePage;
+import com.greendelta.bioheating.model.client.InclusionUpdate;
+import com.greendelta.bioheating.model.client.ProjectInfo;
+import com.greendelta.bioheating.model.client.VectorTile;
 import com.greendelta.bioheating.util.Res;
 
 @Service
 public class ProjectService {
 
+	private static final FetchPlan FULL_MAP = FetchPlan.of(
+		"map.buildings", "map.buildings.fuel", "map.streets");
+
 	private final Database db;
+	private final ModelService models;
+	private final MapService maps;
+	private final int importParallelism;
+	private final int importQueueSize;
+	private final int importBatchSize;
 
-	public ProjectService(Database db) {
+	public ProjectService(
+		Database db,
+		ModelService models,
+		MapService maps,
+		@Value("${bioheating.import.parallelism:0}") int importParallelism,
+		@Value("${bioheating.import.queue-size:1000}") int importQueueSize,
+		@Value("${bioheating.import.batch-size:1000}") int importBatchSize
+	) {
 		this.db = db;
+		this.models = models;
+		this.maps = maps;
+		this.importParallelism = importParallelism;
+		this.importQueueSize = importQueueSize;
+		this.importBatchSize = importBatchSize;
 	}
 
-	public List<Project> getProjects(User user) {
+	/// Returns the infos of the projects of the given user. Only the header
+	/// data of these projects are queried; their maps are not loaded.
+	public List<ProjectInfo> getProjects(User user) {
 		if (user == null)
 			return List.of();
-		return db.getAll(Project.class).stream()
-			.filter(p -> Objects.equals(p.user(), user))
-			.toList();
+		return db.query(ProjectInfo.class, ProjectInfo.QUERY, user);
 	}
 
+	/// Returns the project with the given ID if it belongs to the given user.
+	/// Only the project header and the map data are loaded, the features of
+	/// the map are loaded on their first access. Thus, this is for operations
+	/// that do not need the features or that use the cached data of the map,
+	/// like the spatial index.
 	public Optional<Project> getProject(User user, long id) {
+		return getProject(user, id, FetchPlan.HEADER);
+	}
+
+	/// Returns the project with the given ID, if it belongs to the given user,
+	/// with the complete map. The buildings, their fuels, and the streets are
+	/// each loaded with a single query.
+	public Optional<Project> getProjectWithMap(User user, long id) {
+		return getProject(user, id, FULL_MAP);
+	}
+
+	private Optional<Project> getProject(User user, long id, FetchPlan plan) {
 		if (user == null)
 			return Optional.empty();
-		var p = db.getForId(Project.class, id);
+		var p = db.getForId(Project.class, id, plan);
 		return p != null && Objects.equals(user, p.user())
 			? Optional.of(p)
 			: Optional.empty();
 	}
 
+	/// Returns a writer for the GeoJSON of the project that uses the cached
+	/// WGS 84 coordinates of its map.
+	public Res<ClientProjectWriter> getWriter(Project project, ObjectMapper json) {
+		var writer = ClientProjectWriter.of(project, json);
+		if (writer.hasError())
+			return writer;
+		var wgs84 = maps.wgs84Of(project.map());
+		return wgs84.hasError()
+			? wgs84.castError()
+			: Res.of(writer.value().withCache(wgs84.value()));
+	}
+
+	/// Returns the version of the cached map data, see [MapService#version].
+	/// It must be read before the project is loaded for the methods that use
+	/// the cached data.
+	public long mapVersion() {
+		return maps.version();
+	}
+
+	/// Returns the next page of map features of the project that intersect
+	/// the given bounding box in WGS 84, see [FeatureIndex#query]. The
+	/// project must be loaded after the given map version was read.
+	public Res<FeaturePage> getFeatures(
+		Project project, long mapVersion, Envelope bbox, long cursor, int limit
+	) {
+		if (project == null)
+			return Res.error("no project given");
+		var index = maps.indexOf(project.map(), mapVersion);
+		return index.hasError()
+			? index.castError()
+			: index.value().query(bbox, cursor, limit);
+	}
+
+	/// Returns the vector tile `z/x/y` of the project map, see [VectorTile].
+	/// The project must be loaded after the given map version was read.
+	public Res<byte[]> getTile(
+		Project project, long mapVersion, int z, int x, int y
+	) {
+		if (project == null)
+			return Res.error("no project given");
+		return maps.tileOf(project.map(), mapVersion, z, x, y);
+	}
+
 	public Res<Project> addMap(Project project, File gml) {
 		if (project == null || gml == null)
 			return Res.error("no project or gml file provided");
+		var predictor = models.predictor();
+		if (predictor.hasError())
+			return predictor.wrapError("failed to load heat demand model");
 		try {
 			return new CityGmlImport(db, project, gml)
 				.withOsmImport(true)
+				.withParallelism(importParallelism)
+				.withQueueSize(importQueueSize)
+				.withBatchSize(importBatchSize)
+				.withModels(models.registry())
+				.withPredictor(predictor.value())
 				.call();
 		} catch (Exception e) {
 			return Res.error("project creation failed", e);
@@ -56,17 +156,59 @@ public class ProjectService {
 			return Res.error("no project given");
 		try {
 			db.delete(project);
+			maps.remove(project.map());
 			return Res.VOID;
 		} catch (Exception e) {
 			return Res.error("failed to delete project", e);
 		}
 	}
 
+	/// Writes the changed feature properties to the map of the project, see
+	/// [FeaturePatch]. Returns the number of updated features.
+	public Res<Integer> patchFeatures(Project project, FeaturePatch patch) {
+		if (project == null || patch == null)
+			return Res.error("no project or changes given");
+		var map = project.map();
+		if (map == null)
+			return Res.error("project has no map");
+		var res = patch.applyTo(db, map);
+		if (res.hasError())
+			return res;
+		db.evict(Project.class, project.id());
+		maps.invalidate(map);
+		return res;
+	}
+
+	/// Sets the inclusion of all buildings and streets of the project map
+	/// that intersect the given area in WGS 84, see [InclusionUpdate].
+	/// Returns the number of updated features. The project must be loaded
+	/// after the given map version was read.
+	public Res<Integer> setInclusion(
+		Project project, long mapVersion, Polygon area, Inclusion inclusion
+	) {
+		if (project == null)
+			return Res.error("no project given");
+		var map = project.map();
+		var index = maps.indexOf(map, mapVersion);
+		if (index.hasError())
+			return index.castError();
+		var update = InclusionUpdate.of(index.value(), area, inclusion);
+		if (update.hasError())
+			return update.castError();
+		var res = update.value().applyTo(db, map);
+		if (res.hasError())
+			return res;
+		db.evict(Project.class, project.id());
+		maps.invalidate(map);
+		return res;
+	}
+
 	public Res<Project> updateProject(Project project) {
 		if (project == null)
 			return Res.error("project is null");
 		try {
 			db.update(project);
+			maps.invalidate(project.map());
 			return Res.of(project);
 		} catch (Exception e) {
 			return Res.error("failed to save project", e);
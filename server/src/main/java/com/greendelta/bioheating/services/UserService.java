@@ -1,9 +1,13 @@
 package com.greendelta.bioheating.services;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 
@@ -13,13 +17,34 @@ import com.greendelta.bioheating.model.User;
 import com.greendelta.bioheating.util.Res;
 import com.greendelta.bioheating.util.Strings;
 
+/// Manages the users. Users are looked up by name with an indexed,
+/// case-insensitive query; the users of recent requests are cached by their
+/// name, so that resolving the current user of a request does not need a
+/// database query. The cache entries are removed when a user is modified or
+/// deleted. A user that was loaded while an entry was removed is not put into
+/// the cache, as it could be outdated already.
 @Service
 public class UserService {
 
 	private final Database db;
+	private final Map<String, User> cache;
 
-	public UserService(Database db) {
+	/// Incremented when an entry is removed from the cache; guarded by the
+	/// cache.
+	private long version;
+
+	public UserService(
+		Database db,
+		@Value("${bioheating.users.cache-size:64}") int cacheSize
+	) {
 		this.db = db;
+		int maxSize = Math.max(1, cacheSize);
+		this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, User> e) {
+				return size() > maxSize;
+			}
+		};
 	}
 
 	public Optional<User> get(long id) {
@@ -40,14 +65,43 @@ public class UserService {
 			: Optional.empty();
 	}
 
-	private Optional<User> getForName(String name) {
+	/// Returns the user with the given name, ignoring the case.
+	public Optional<User> getForName(String name) {
 		if (Strings.isNil(name))
 			return Optional.empty();
-		for (var u : db.getAll(User.class)) {
-			if (Strings.eq(name, u.name()))
-				return Optional.of(u);
+		var key = keyOf(name);
+		long loadVersion;
+		synchronized (cache) {
+			var user = cache.get(key);
+			if (user != null)
+				return Optional.of(user);
+			loadVersion = version;
+		}
+		var users = db.query(User.class,
+			"SELECT u FROM User u WHERE LOWER(u.name) = ?1", key);
+		if (users.isEmpty())
+			return Optional.empty();
+		var user = users.getFirst();
+		synchronized (cache) {
+			// skip the put when a user was modified in the meantime
+			if (version == loadVersion) {
+				cache.put(key, user);
+			}
+		}
+		return Optional.of(user);
+	}
+
+	private static String keyOf(String name) {
+		return name.strip().toLowerCase(Locale.ROOT);
+	}
+
+	private void evict(String name) {
+		if (name == null)
+			return;
+		synchronized (cache) {
+			version++;
+			cache.remove(keyOf(name));
 		}
-		return Optional.empty();
 	}
 
 	public Res<UserInfo> create(UserData data) {
@@ -83,12 +137,13 @@ public class UserService {
 		if (user.isAdmin())
 			return Res.error("Admins cannot be deleted");
 		// delete all projects of that user
-		for (var p : db.getAll(Project.class)) {
-			if (user.equals(p.user())) {
-				db.delete(p);
-			}
+		var projects = db.query(Project.class,
+			"SELECT p FROM Project p WHERE p.user = ?1", user);
+		for (var p : projects) {
+			db.delete(p);
 		}
 		db.delete(user);
+		evict(user.name());
 		return Res.VOID;
 	}
 
@@ -105,6 +160,7 @@ public class UserService {
 		if (hash.hasError())
 			return Res.error("Failed to process password");
 
+		evict(user.name());
 		user.name(data.name.strip())
 			.fullName(data.fullName)
 			.password(hash.value())
@@ -115,6 +171,7 @@ public class UserService {
 		} else {
 			user = db.update(user);
 		}
+		evict(user.name());
 
 		return Res.of(UserInfo.of(user));
 	}
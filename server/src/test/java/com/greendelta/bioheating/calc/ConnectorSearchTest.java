@@ -0,0 +1,113 @@
+package com.greendelta.bioheating.calc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Inclusion;
+import com.greendelta.bioheating.model.Street;
+
+public class ConnectorSearchTest {
+
+	@Test
+	public void testSameResults() {
+		var map = randomMap(new Random(42), 200, 60);
+		var expected = Solution.calculate(map, ConnectorSearch.Engine.BRUTE_FORCE);
+		var actual = Solution.calculate(map, ConnectorSearch.Engine.INDEXED);
+		assertSame(expected, actual);
+	}
+
+	@Test
+	public void testParallel() {
+		var map = randomMap(new Random(13), 500, 80);
+		var expected = Solution.calculate(map, ConnectorSearch.Engine.BRUTE_FORCE);
+		try (var pool = CalcPool.of(4)) {
+			for (var engine : ConnectorSearch.Engine.values()) {
+				var actual = Solution.calculate(map, engine, pool);
+				assertSame(expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void testFewStreets() {
+		var map = randomMap(new Random(7), 50, 2);
+		var expected = Solution.calculate(map, ConnectorSearch.Engine.BRUTE_FORCE);
+		var actual = Solution.calculate(map, ConnectorSearch.Engine.INDEXED);
+		assertEquals(100, actual.connectors().size());
+		assertSame(expected, actual);
+	}
+
+	@Test
+	public void testTies() {
+		// a building in the middle of four streets with the same distance
+		var map = new GeoMap();
+		map.buildings().add(new Building()
+			.inclusion(Inclusion.OPTIONAL)
+			.coordinates(new Coordinate[]{
+				xy(4, 4), xy(6, 4), xy(6, 6), xy(4, 6), xy(4, 4)}));
+		map.streets().add(street(xy(0, 0), xy(0, 10)));
+		map.streets().add(street(xy(10, 0), xy(10, 10)));
+		map.streets().add(street(xy(0, 0), xy(10, 0)));
+		map.streets().add(street(xy(0, 10), xy(10, 10)));
+
+		var expected = Solution.calculate(map, ConnectorSearch.Engine.BRUTE_FORCE);
+		var actual = Solution.calculate(map, ConnectorSearch.Engine.INDEXED);
+		assertEquals(3, actual.connectors().size());
+		assertSame(expected, actual);
+	}
+
+	private void assertSame(Solution expected, Solution actual) {
+		var ecs = expected.connectors();
+		var acs = actual.connectors();
+		assertEquals(ecs.size(), acs.size());
+		for (int i = 0; i < ecs.size(); i++) {
+			var e = ecs.get(i);
+			var a = acs.get(i);
+			assertEquals(e.buildingPolygon().building(), a.buildingPolygon().building());
+			assertEquals(e.streetLine().street(), a.streetLine().street());
+			assertEquals(e.length(), a.length(), 1e-10);
+		}
+	}
+
+	private GeoMap randomMap(Random rand, int buildings, int streets) {
+		var map = new GeoMap();
+		long id = 1;
+		for (int i = 0; i < buildings; i++) {
+			double x = rand.nextDouble() * 1000;
+			double y = rand.nextDouble() * 1000;
+			var b = new Building()
+				.inclusion(Inclusion.OPTIONAL)
+				.coordinates(new Coordinate[]{
+					xy(x, y), xy(x + 10, y), xy(x + 10, y + 8), xy(x, y + 8), xy(x, y)});
+			b.id(id++);
+			map.buildings().add(b);
+		}
+		for (int i = 0; i < streets; i++) {
+			double x = rand.nextDouble() * 1000;
+			double y = rand.nextDouble() * 1000;
+			var s = street(
+				xy(x, y),
+				xy(x + rand.nextDouble() * 200 - 100, y + rand.nextDouble() * 200 - 100),
+				xy(x + rand.nextDouble() * 200 - 100, y + rand.nextDouble() * 200 - 100));
+			s.id(id++);
+			map.streets().add(s);
+		}
+		return map;
+	}
+
+	private Street street(Coordinate... cs) {
+		return new Street()
+			.inclusion(Inclusion.OPTIONAL)
+			.coordinates(cs);
+	}
+
+	private Coordinate xy(double x, double y) {
+		return new Coordinate(x, y);
+	}
+}
@@ -0,0 +1,129 @@
+package com.greendelta.bioheating.calc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.alg.spanning.KruskalMinimumSpanningTree;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.jupiter.api.Test;
+
+public class CsrGraphTest {
+
+	@Test
+	public void testAdjacency() {
+		var b = CsrGraph.builder(4);
+		b.addEdge(0, 1, 1);
+		b.addEdge(1, 2, 2);
+		b.addEdge(1, 3, 3);
+		assertEquals(-1, b.addEdge(2, 2, 1));
+		var g = b.build();
+
+		assertEquals(4, g.vertexCount());
+		assertEquals(3, g.edgeCount());
+		assertEquals(1, g.degreeOf(0));
+		assertEquals(3, g.degreeOf(1));
+		assertArrayEquals(new int[]{0, 1, 2}, sorted(g.edgesOf(1)));
+		assertEquals(3, g.opposite(2, 1));
+		assertEquals(1, g.opposite(2, 3));
+		assertThrows(IndexOutOfBoundsException.class, () -> b.addEdge(0, 4, 1));
+	}
+
+	@Test
+	public void testMinSpanningForest() {
+		// a square with a diagonal and a separate edge
+		var b = CsrGraph.builder(6);
+		b.addEdge(0, 1, 1);
+		b.addEdge(1, 2, 1);
+		b.addEdge(2, 3, 1);
+		b.addEdge(3, 0, 5);
+		b.addEdge(0, 2, 0.5);
+		b.addEdge(4, 5, 1);
+		var g = b.build();
+
+		var forest = g.minSpanningForest();
+		assertEquals(4, forest.length);
+		double w = 0;
+		for (int e : forest) {
+			w += g.weight(e);
+		}
+		assertEquals(3.5, w, 1e-10);
+	}
+
+	@Test
+	public void testRandomMinSpanningForest() {
+		// many edges with equal weights, compared to the result of JGraphT
+		var rand = new Random(42);
+		var b = CsrGraph.builder(200);
+		for (int i = 0; i < 2000; i++) {
+			b.addEdge(rand.nextInt(200), rand.nextInt(200), rand.nextInt(10));
+		}
+		var g = b.build();
+		double w = 0;
+		for (int e : g.minSpanningForest()) {
+			w += g.weight(e);
+		}
+		var expected = new KruskalMinimumSpanningTree<>(g.toGraph())
+			.getSpanningTree()
+			.getWeight();
+		assertEquals(expected, w, 1e-10);
+	}
+
+	@Test
+	public void testDijkstra() {
+		var b = CsrGraph.builder(5);
+		b.addEdge(0, 1, 1);
+		b.addEdge(1, 2, 1);
+		b.addEdge(0, 2, 3);
+		b.addEdge(2, 3, 1);
+		var g = b.build();
+
+		var search = new CsrDijkstra(g);
+		search.run(new int[]{0, 3});
+		assertEquals(0, search.dist[0]);
+		assertEquals(1, search.dist[1]);
+		assertEquals(1, search.dist[2]);
+		assertEquals(3, search.base[2]);
+		assertEquals(-1, search.base[4]);
+
+		// the state is reset for the next search
+		search.run(0, v -> v == 3, 1);
+		assertEquals(3, search.dist[3]);
+		assertEquals(0, search.base[3]);
+		assertTrue(Double.isInfinite(search.dist[4]));
+	}
+
+	@Test
+	public void testJGraphTAdapter() {
+		var jg = new SimpleWeightedGraph<String, DefaultWeightedEdge>(
+			DefaultWeightedEdge.class);
+		for (var v : Set.of("a", "b", "c")) {
+			jg.addVertex(v);
+		}
+		jg.setEdgeWeight(jg.addEdge("a", "b"), 2);
+		jg.setEdgeWeight(jg.addEdge("b", "c"), 3);
+
+		var mapping = CsrGraph.of(jg);
+		var g = mapping.graph();
+		assertEquals(3, g.vertexCount());
+		assertEquals(2, g.edgeCount());
+		int b = mapping.ids().get("b");
+		assertEquals("b", mapping.vertices().get(b));
+		assertEquals(2, g.degreeOf(b));
+
+		var back = g.toGraph();
+		assertEquals(3, back.vertexSet().size());
+		assertEquals(2, back.edgeSet().size());
+		int a = mapping.ids().get("a");
+		assertEquals(2, back.getEdgeWeight(back.getEdge(a, b)), 1e-10);
+	}
+
+	private int[] sorted(int[] values) {
+		var copy = values.clone();
+		Arrays.sort(copy);
+		return copy;
+	}
+}
@@ -0,0 +1,129 @@
+package com.greendelta.bioheating.calc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Set;
+
+import org.jgrapht.Graph;
+import org.jgrapht.alg.connectivity.ConnectivityInspector;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.jupiter.api.Test;
+
+public class SteinerTreeTest {
+
+	@Test
+	public void testSingleTerminal() {
+		var g = newGraph();
+		edge(g, "a", "b", 1);
+		var tree = SteinerTree.compute(g, Set.of("a")).orElseThrow();
+		assertEquals(Set.of("a"), tree.vertexSet());
+		assertTrue(tree.edgeSet().isEmpty());
+	}
+
+	@Test
+	public void testSteinerNode() {
+		// a star with a Steiner node `s` in the center; the direct edges
+		// between the terminals are more expensive than the path over `s`
+		var g = newGraph();
+		edge(g, "a", "s", 1);
+		edge(g, "b", "s", 1);
+		edge(g, "c", "s", 1);
+		edge(g, "a", "b", 3);
+		edge(g, "b", "c", 3);
+		edge(g, "c", "a", 3);
+		edge(g, "s", "x", 1);
+
+		var tree = SteinerTree.compute(g, Set.of("a", "b", "c")).orElseThrow();
+		assertEquals(Set.of("a", "b", "c", "s"), tree.vertexSet());
+		assertEquals(3, weightOf(tree), 1e-10);
+		assertTree(tree, Set.of("a", "b", "c"));
+	}
+
+	@Test
+	public void testGrid() {
+		// a 10x10 grid with the 4 corners as terminals; the optimal tree has
+		// a weight of 3 * 9 = 27
+		var g = grid();
+		var terminals = Set.of(0, 9, 90, 99);
+		var tree = SteinerTree.compute(g, terminals).orElseThrow();
+		assertTree(tree, terminals);
+		double w = weightOf(tree);
+		assertTrue(w >= 27 && w <= 54);
+	}
+
+	@Test
+	public void testExactClosure() {
+		var g = grid();
+		var terminals = Set.of(0, 9, 90, 99, 44, 57);
+		var seq = SteinerTree.compute(
+			g, terminals, SteinerTree.Closure.EXACT, null).orElseThrow();
+		assertTree(seq, terminals);
+		try (var pool = CalcPool.of(4)) {
+			var par = SteinerTree.compute(
+				g, terminals, SteinerTree.Closure.EXACT, pool).orElseThrow();
+			assertTree(par, terminals);
+			assertEquals(weightOf(seq), weightOf(par), 1e-10);
+		}
+	}
+
+	@Test
+	public void testDisconnected() {
+		var g = newGraph();
+		edge(g, "a", "b", 1);
+		edge(g, "c", "d", 1);
+		var res = SteinerTree.compute(g, Set.of("a", "c"));
+		assertTrue(res.hasError());
+	}
+
+	@Test
+	public void testUnknownTerminal() {
+		var g = newGraph();
+		edge(g, "a", "b", 1);
+		var res = SteinerTree.compute(g, Set.of("a", "x"));
+		assertTrue(res.hasError());
+	}
+
+	private Graph<Integer, DefaultWeightedEdge> grid() {
+		var g = new SimpleWeightedGraph<Integer, DefaultWeightedEdge>(
+			DefaultWeightedEdge.class);
+		for (int x = 0; x < 10; x++) {
+			for (int y = 0; y < 10; y++) {
+				int v = x * 10 + y;
+				if (x < 9) edge(g, v, v + 10, 1);
+				if (y < 9) edge(g, v, v + 1, 1);
+			}
+		}
+		return g;
+	}
+
+	private <V> void assertTree(Graph<V, DefaultWeightedEdge> tree, Set<V> terminals) {
+		assertTrue(tree.vertexSet().containsAll(terminals));
+		assertEquals(tree.vertexSet().size() - 1, tree.edgeSet().size());
+		assertTrue(new ConnectivityInspector<>(tree).isConnected());
+		for (var v : tree.vertexSet()) {
+			if (tree.degreeOf(v) == 1) {
+				assertTrue(terminals.contains(v));
+			}
+		}
+	}
+
+	private <V> double weightOf(Graph<V, DefaultWeightedEdge> g) {
+		double w = 0;
+		for (var e : g.edgeSet()) {
+			w += g.getEdgeWeight(e);
+		}
+		return w;
+	}
+
+	private Graph<String, DefaultWeightedEdge> newGraph() {
+		return new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+	}
+
+	private <V> void edge(Graph<V, DefaultWeightedEdge> g, V u, V v, double w) {
+		g.addVertex(u);
+		g.addVertex(v);
+		var e = g.addEdge(u, v);
+		g.setEdgeWeight(e, w);
+	}
+}
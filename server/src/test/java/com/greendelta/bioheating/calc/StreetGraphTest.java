@@ -0,0 +1,131 @@
+package com.greendelta.bioheating.calc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+
+import org.jgrapht.alg.connectivity.ConnectivityInspector;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Inclusion;
+import com.greendelta.bioheating.model.Street;
+
+public class StreetGraphTest {
+
+	@Test
+	public void testCrossing() {
+		var map = new GeoMap();
+		map.streets().add(street(xy(0, 0), xy(10, 0)));
+		map.streets().add(street(xy(5, -5), xy(5, 5)));
+		map.buildings().add(building(1, 2));
+
+		var solution = Solution.calculate(map);
+		var sg = StreetGraph.of(solution).orElseThrow();
+		var g = sg.graph();
+
+		// the crossing point is a node with 4 street edges
+		int crossing = vertexAt(sg, 5, 0);
+		assertEquals(4, g.degreeOf(crossing));
+
+		// the building is connected with 2 connectors of length 2
+		int b = sg.buildingVertices()[0];
+		assertEquals(2, g.degreeOf(b));
+		for (int e : g.edgesOf(b)) {
+			assertEquals(2, g.weight(e), 1e-10);
+		}
+
+		// the total length of the streets is kept
+		double length = 0;
+		for (int e = 0; e < g.edgeCount(); e++) {
+			if (g.source(e) != b && g.target(e) != b) {
+				length += g.weight(e);
+			}
+		}
+		assertEquals(20, length, 1e-10);
+		assertTrue(new ConnectivityInspector<>(g.toGraph()).isConnected());
+		assertEquals(1, sg.terminals().length);
+	}
+
+	@Test
+	public void testSnapping() {
+		// the second street ends 5 mm before the first street
+		var map = new GeoMap();
+		map.streets().add(street(xy(0, 0), xy(10, 0)));
+		map.streets().add(street(xy(7, 0.005), xy(7, 5)));
+		map.buildings().add(building(1, 2));
+
+		var solution = Solution.calculate(map);
+		var snapped = StreetGraph.of(solution, 0.01).orElseThrow();
+		assertTrue(new ConnectivityInspector<>(snapped.graph().toGraph()).isConnected());
+		assertEquals(3, snapped.graph().degreeOf(vertexAt(snapped, 7, 0)));
+
+		// without snapping, the second street is a dead end
+		var exact = StreetGraph.of(solution, 0).orElseThrow();
+		assertEquals(1, exact.graph().degreeOf(vertexAt(exact, 7, 0.005)));
+	}
+
+	@Test
+	public void testSteinerTree() {
+		var map = new GeoMap();
+		map.streets().add(street(xy(0, 0), xy(100, 0)));
+		map.streets().add(street(xy(50, -50), xy(50, 50)));
+		for (int i = 0; i < 5; i++) {
+			map.buildings().add(building(5 + i * 20, 3));
+			map.buildings().add(building(5 + i * 20, -7));
+		}
+
+		var sg = StreetGraph.of(Solution.calculate(map)).orElseThrow();
+		var terminals = sg.terminals();
+		assertEquals(10, terminals.length);
+		var edges = SteinerTree.compute(sg.graph(), terminals).orElseThrow();
+
+		// the tree edges form a tree that contains all terminals
+		var tree = new HashSet<Integer>();
+		for (int e : edges) {
+			tree.add(sg.graph().source(e));
+			tree.add(sg.graph().target(e));
+		}
+		for (int t : terminals) {
+			assertTrue(tree.contains(t));
+		}
+		assertEquals(tree.size() - 1, edges.length);
+
+		// the same tree is calculated on the JGraphT graph
+		var jtree = SteinerTree.compute(
+			sg.graph().toGraph(),
+			Arrays.stream(terminals).boxed().collect(Collectors.toSet()))
+			.orElseThrow();
+		assertEquals(tree, jtree.vertexSet());
+	}
+
+	private int vertexAt(StreetGraph sg, double x, double y) {
+		var vs = sg.vertices();
+		for (int i = 0; i < vs.length; i++) {
+			if (vs[i].distance(xy(x, y)) < 1e-9)
+				return i;
+		}
+		return fail("no vertex at " + x + ", " + y);
+	}
+
+	private Building building(double x, double y) {
+		return new Building()
+			.inclusion(Inclusion.OPTIONAL)
+			.coordinates(new Coordinate[]{
+				xy(x, y), xy(x + 2, y), xy(x + 2, y + 2), xy(x, y + 2), xy(x, y)});
+	}
+
+	private Street street(Coordinate... cs) {
+		return new Street()
+			.inclusion(Inclusion.OPTIONAL)
+			.coordinates(cs);
+	}
+
+	private Coordinate xy(double x, double y) {
+		return new Coordinate(x, y);
+	}
+}
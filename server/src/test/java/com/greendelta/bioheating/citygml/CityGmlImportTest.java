@@ -6,6 +6,8 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Objects;
 
 import org.junit.jupiter.api.AfterEach;
@@ -14,6 +16,7 @@ import org.junit.jupiter.api.Test;
 
 import com.greendelta.bioheating.Tests;
 import com.greendelta.bioheating.io.CityGmlImport;
+import com.greendelta.bioheating.model.Building;
 import com.greendelta.bioheating.model.Database;
 import com.greendelta.bioheating.model.Project;
 
@@ -84,4 +87,50 @@ public class CityGmlImportTest {
 
 		db.delete(project);
 	}
+
+	@Test
+	public void testImportMany() throws IOException {
+		// copies the example building with other IDs and street numbers into a
+		// file with more buildings than fit into a batch
+		var xml = Files.readString(file.toPath());
+		int start = xml.indexOf("<core:cityObjectMember>");
+		int end = xml.lastIndexOf("</core:cityObjectMember>")
+			+ "</core:cityObjectMember>".length();
+		var member = xml.substring(start, end);
+		var members = new StringBuilder();
+		int count = 250;
+		for (int i = 0; i < count; i++) {
+			members.append(member
+				.replace("DEHH_", "DEHH_" + i + "_")
+				.replace("<xAL:ThoroughfareNumber>8<",
+					"<xAL:ThoroughfareNumber>" + i + "<"));
+		}
+		Files.writeString(file.toPath(),
+			xml.substring(0, start) + members + xml.substring(end));
+
+		var res = new CityGmlImport(db, new Project().name("test project"), file)
+			.withOsmImport(WITH_OSM)
+			.withParallelism(4)
+			.withQueueSize(16)
+			.withBatchSize(64)
+			.call();
+		assertFalse(res.hasError());
+		var project = res.value();
+
+		// all buildings are imported in the order of the file; the IDs are
+		// assigned in the order in which the buildings are written
+		var buildings = new ArrayList<>(project.map().buildings());
+		buildings.sort(Comparator.comparingLong(Building::id));
+		assertEquals(count, buildings.size());
+		var names = new ArrayList<String>();
+		for (var b : buildings) {
+			names.add(b.name());
+			assertTrue(b.heatDemand() >= 0);
+		}
+		for (int i = 0; i < count; i++) {
+			assertEquals("Ohlenkamp " + i + "b", names.get(i));
+		}
+
+		db.delete(project);
+	}
 }
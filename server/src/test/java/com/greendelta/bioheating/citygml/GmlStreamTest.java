@@ -0,0 +1,61 @@
+package com.greendelta.bioheating.citygml;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Objects;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class GmlStreamTest {
+
+	private File file;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		var temp = Files.createTempFile("example", ".xml");
+		try (var stream = getClass().getResourceAsStream("example.xml")) {
+			Objects.requireNonNull(stream);
+			Files.copy(stream, temp, StandardCopyOption.REPLACE_EXISTING);
+		}
+		file = temp.toFile();
+	}
+
+	@AfterEach
+	public void cleanup() throws IOException {
+		Files.delete(file.toPath());
+	}
+
+	@Test
+	public void testEnvelope() {
+		var env = GmlStream.open(file).orElseThrow().envelope();
+		assertEquals("urn:adv:crs:ETRS89_UTM32*DE_DHHN92_NH", env.srs());
+		assertEquals(3, env.dimension());
+		assertEquals(557991.826, env.lowerCorner().getX(), 0.0001);
+		assertEquals(5936004.045, env.upperCorner().getY(), 0.0001);
+		assertEquals(54.363, env.upperCorner().getCoordinate().getZ(), 0.0001);
+	}
+
+	@Test
+	public void testBuildings() {
+		var buildings = new ArrayList<GmlBuilding>();
+		var count = GmlStream.open(file)
+			.orElseThrow()
+			.forEach(buildings::add)
+			.orElseThrow();
+		assertEquals(1, count);
+
+		// the same building as in the complete model
+		var b = buildings.getFirst();
+		assertEquals("DEHH_fe358f01-2ce4-4487-a47b-8989435fb552", b.id());
+		assertEquals("31001_1010", b.function());
+		assertEquals("Ohlenkamp", b.address().street());
+		assertEquals(5, b.groundSurface().getCoordinates().length);
+	}
+}
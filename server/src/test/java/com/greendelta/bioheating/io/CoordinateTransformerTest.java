@@ -0,0 +1,86 @@
+package com.greendelta.bioheating.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+public class CoordinateTransformerTest {
+
+	@Test
+	public void testCached() {
+		var a = CoordinateTransformer.toWgs84From("EPSG:25832").orElseThrow();
+		var b = CoordinateTransformer.of(CrsId.utm32(), CrsId.wgs84()).orElseThrow();
+		assertSame(a, b);
+		var c = CoordinateTransformer.fromWgs84To("EPSG:25832").orElseThrow();
+		assertNotSame(a, c);
+		assertTrue(CoordinateTransformer.of(null, CrsId.wgs84()).hasError());
+	}
+
+	@Test
+	public void testRoundTrip() {
+		var toWgs84 = CoordinateTransformer.toWgs84From("EPSG:25832").orElseThrow();
+		var fromWgs84 = CoordinateTransformer.fromWgs84To("EPSG:25832").orElseThrow();
+		var origin = new Coordinate[]{new Coordinate(500_000, 5_700_000)};
+		var wgs84 = toWgs84.transform(origin).orElseThrow();
+		assertEquals(9.0, wgs84[0].x, 1e-9);
+		var back = fromWgs84.transform(wgs84).orElseThrow();
+		assertEquals(500_000, back[0].x, 1e-4);
+		assertEquals(5_700_000, back[0].y, 1e-4);
+	}
+
+	@Test
+	public void testPackedXY() {
+		var trans = CoordinateTransformer.toWgs84From("EPSG:25832").orElseThrow();
+		var cs = points();
+		var expected = trans.transform(cs).orElseThrow();
+
+		// in place
+		var xy = CoordinateTransformer.xyOf(cs, null);
+		assertEquals(2 * cs.length, xy.length);
+		assertFalse(trans.transform(xy).hasError());
+		for (int i = 0; i < cs.length; i++) {
+			assertEquals(expected[i].x, xy[2 * i], 1e-12);
+			assertEquals(expected[i].y, xy[2 * i + 1], 1e-12);
+		}
+
+		// the first 3 points into a separate buffer
+		var buffer = CoordinateTransformer.xyOf(cs, new double[10]);
+		var out = new double[6];
+		assertFalse(trans.transform(buffer, 3, out).hasError());
+		assertEquals(expected[2].x, out[4], 1e-12);
+		assertEquals(expected[2].y, out[5], 1e-12);
+		assertTrue(trans.transform(buffer, 4, out).hasError());
+	}
+
+	@Test
+	public void testThreads() throws Exception {
+		var trans = CoordinateTransformer.toWgs84From("EPSG:25833").orElseThrow();
+		var expected = trans.transform(points()).orElseThrow();
+		var tasks = new ArrayList<Callable<Coordinate[]>>();
+		for (int i = 0; i < 16; i++) {
+			tasks.add(() -> trans.transform(points()).orElseThrow());
+		}
+		try (var pool = Executors.newFixedThreadPool(4)) {
+			for (var future : pool.invokeAll(tasks)) {
+				var cs = future.get();
+				for (int i = 0; i < cs.length; i++) {
+					assertEquals(expected[i].x, cs[i].x, 1e-12);
+					assertEquals(expected[i].y, cs[i].y, 1e-12);
+				}
+			}
+		}
+	}
+
+	private Coordinate[] points() {
+		var cs = new Coordinate[10_000];
+		for (int i = 0; i < cs.length; i++) {
+			cs[i] = new Coordinate(380_000 + i, 5_800_000 + i);
+		}
+		return cs;
+	}
+}
@@ -0,0 +1,161 @@
+package com.greendelta.bioheating.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.util.Res;
+
+public class ImportPipelineTest {
+
+	private ExecutorService exec;
+
+	@BeforeEach
+	public void setup() {
+		exec = Executors.newFixedThreadPool(5);
+	}
+
+	@AfterEach
+	public void cleanup() {
+		exec.shutdownNow();
+	}
+
+	@Test
+	public void testOrder() {
+		var batches = new ArrayList<List<Building>>();
+		Function<Integer, Building> converter = i -> i % 3 == 0
+			? null
+			: new Building().name(Integer.toString(i));
+		var res = pipeline(converter, batches::add)
+			.withParallelism(4)
+			.run(exec, items(10_000));
+		assertFalse(res.hasError());
+
+		var expected = new ArrayList<String>();
+		for (int i = 0; i < 10_000; i++) {
+			if (i % 3 != 0) {
+				expected.add(Integer.toString(i));
+			}
+		}
+		var names = new ArrayList<String>();
+		for (var batch : batches) {
+			assertTrue(batch.size() <= 100);
+			for (var b : batch) {
+				names.add(b.name());
+			}
+		}
+		assertEquals(expected, names);
+	}
+
+	@Test
+	public void testConverterFails() {
+		Function<Integer, Building> converter = i -> {
+			if (i == 5)
+				throw new IllegalStateException("invalid building");
+			return new Building();
+		};
+		var res = assertTimeoutPreemptively(Duration.ofSeconds(10),
+			() -> pipeline(converter, batch -> {}).run(exec, items(1000)));
+		assertTrue(res.hasError());
+	}
+
+	@Test
+	public void testConverterError() {
+		// errors are not swallowed, so that no building is silently missing
+		Function<Integer, Building> converter = i -> {
+			if (i == 5)
+				throw new StackOverflowError();
+			return new Building();
+		};
+		var count = new AtomicInteger();
+		var res = assertTimeoutPreemptively(Duration.ofSeconds(10),
+			() -> pipeline(converter, batch -> count.addAndGet(batch.size()))
+				.withParallelism(4)
+				.run(exec, items(1000)));
+		assertTrue(res.hasError());
+		assertTrue(count.get() < 1000);
+	}
+
+	@Test
+	public void testBoundedBuffer() {
+		// the first item is slow; the reader must not run ahead of the
+		// consumer by more than the queue size
+		var converted = new AtomicInteger();
+		var consumed = new AtomicInteger();
+		var maxAhead = new AtomicInteger();
+		Function<Integer, Building> converter = i -> {
+			if (i == 0) {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			int ahead = converted.incrementAndGet() - consumed.get();
+			maxAhead.accumulateAndGet(ahead, Math::max);
+			return new Building();
+		};
+		var res = assertTimeoutPreemptively(Duration.ofSeconds(10),
+			() -> pipeline(converter, batch -> consumed.addAndGet(batch.size()))
+				.withParallelism(4)
+				.withBatchSize(1)
+				.run(exec, items(1000)));
+		assertFalse(res.hasError());
+		assertEquals(1000, consumed.get());
+		// the queue size plus the batch that is passed to the consumer
+		assertTrue(maxAhead.get() <= 11, "ahead: " + maxAhead.get());
+	}
+
+	@Test
+	public void testConsumerFails() {
+		Consumer<List<Building>> consumer = batch -> {
+			throw new IllegalStateException("failed to predict heat demands");
+		};
+		var res = assertTimeoutPreemptively(Duration.ofSeconds(10),
+			() -> pipeline(i -> new Building(), consumer)
+				.withParallelism(2)
+				.run(exec, items(1000)));
+		assertTrue(res.hasError());
+	}
+
+	@Test
+	public void testSourceFails() {
+		var res = assertTimeoutPreemptively(Duration.ofSeconds(10),
+			() -> pipeline(i -> new Building(), batch -> {})
+				.run(exec, fn -> {
+					fn.accept(1);
+					return Res.error("invalid file");
+				}));
+		assertTrue(res.hasError());
+	}
+
+	private ImportPipeline<Integer> pipeline(
+		Function<Integer, Building> converter, Consumer<List<Building>> consumer
+	) {
+		return new ImportPipeline<>(converter, consumer)
+			.withParallelism(1)
+			.withQueueSize(10)
+			.withBatchSize(100);
+	}
+
+	private ImportPipeline.Source<Integer> items(int count) {
+		return fn -> {
+			for (int i = 0; i < count; i++) {
+				fn.accept(i);
+			}
+			return Res.VOID;
+		};
+	}
+}
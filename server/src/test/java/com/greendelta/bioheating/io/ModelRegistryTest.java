@@ -0,0 +1,142 @@
+package com.greendelta.bioheating.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.greendelta.bioheating.io.ModelRegistry.Engine;
+
+import ml.dmlc.xgboost4j.java.DMatrix;
+import ml.dmlc.xgboost4j.java.XGBoost;
+
+public class ModelRegistryTest {
+
+	private Path dir;
+	private long stamp = System.currentTimeMillis();
+
+	@BeforeEach
+	public void setup() throws Exception {
+		dir = Files.createTempDirectory("models");
+		writeModel(3);
+	}
+
+	@AfterEach
+	public void cleanup() throws IOException {
+		try (var files = Files.list(dir)) {
+			for (var f : files.toList()) {
+				Files.delete(f);
+			}
+		}
+		Files.delete(dir);
+	}
+
+	@Test
+	public void testShared() {
+		var registry = ModelRegistry.of(dir);
+		var java = registry.predictor(Engine.JAVA).orElseThrow();
+		assertSame(java, registry.predictor(Engine.JAVA).orElseThrow());
+		var boost = registry.predictor(Engine.XGBOOST).orElseThrow();
+		assertSame(boost, registry.predictor(Engine.XGBOOST).orElseThrow());
+		var mappings = registry.mappings().orElseThrow();
+		assertSame(mappings, registry.mappings().orElseThrow());
+		assertSame(ModelRegistry.getDefault(), ModelRegistry.getDefault());
+	}
+
+	@Test
+	public void testReload() throws Exception {
+		var registry = ModelRegistry.of(dir);
+		var first = (TreeEnsemble) registry.predictor(Engine.JAVA).orElseThrow();
+		assertEquals(3, first.treeCount());
+		assertFalse(registry.reload().orElseThrow());
+
+		writeModel(5);
+		assertTrue(registry.reload().orElseThrow());
+		var second = (TreeEnsemble) registry.predictor(Engine.JAVA).orElseThrow();
+		assertEquals(5, second.treeCount());
+		assertEquals(3, first.treeCount());
+		assertFalse(registry.reload().orElseThrow());
+	}
+
+	@Test
+	public void testBrokenModel() throws Exception {
+		var registry = ModelRegistry.of(dir);
+		var first = registry.predictor(Engine.JAVA).orElseThrow();
+
+		var file = dir.resolve("model.json");
+		Files.writeString(file, "{ broken");
+		touch(file);
+		assertTrue(registry.reload().hasError());
+		assertSame(first, registry.predictor(Engine.JAVA).orElseThrow());
+	}
+
+	@Test
+	public void testPartlyBrokenModel() throws Exception {
+		var registry = ModelRegistry.of(dir);
+		var boost = registry.predictor(Engine.XGBOOST).orElseThrow();
+		var java = registry.predictor(Engine.JAVA).orElseThrow();
+
+		// a linear model can be read by XGBoost but not by the Java engine;
+		// the models must be replaced together or not at all
+		writeModel(3, "gblinear");
+		assertTrue(registry.reload().hasError());
+		assertSame(boost, registry.predictor(Engine.XGBOOST).orElseThrow());
+		assertSame(java, registry.predictor(Engine.JAVA).orElseThrow());
+		assertTrue(registry.reload().hasError());
+
+		writeModel(5);
+		assertTrue(registry.reload().orElseThrow());
+		assertNotSame(boost, registry.predictor(Engine.XGBOOST).orElseThrow());
+		var trees = (TreeEnsemble) registry.predictor(Engine.JAVA).orElseThrow();
+		assertEquals(5, trees.treeCount());
+	}
+
+	@Test
+	public void testEngine() {
+		assertEquals(Engine.JAVA, Engine.of(" Java "));
+		assertEquals(Engine.XGBOOST, Engine.of("xgboost"));
+		assertEquals(Engine.XGBOOST, Engine.of(null));
+	}
+
+	private void writeModel(int rounds) throws Exception {
+		writeModel(rounds, "gbtree");
+	}
+
+	private void writeModel(int rounds, String booster) throws Exception {
+		var rand = new Random(42);
+		int rows = 100;
+		var data = new float[rows * BoostEncoder.PARAMS];
+		var labels = new float[rows];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = rand.nextFloat() * 100;
+		}
+		for (int i = 0; i < rows; i++) {
+			labels[i] = data[i * BoostEncoder.PARAMS] * 2;
+		}
+		var matrix = new DMatrix(data, rows, BoostEncoder.PARAMS, Float.NaN);
+		matrix.setLabel(labels);
+		var params = new HashMap<String, Object>();
+		params.put("max_depth", 3);
+		params.put("objective", "reg:squarederror");
+		params.put("booster", booster);
+		var model = XGBoost.train(matrix, params, rounds, new HashMap<>(), null, null);
+		var file = dir.resolve("model.json");
+		Files.write(file, model.toByteArray("json"));
+		touch(file);
+	}
+
+	/// Sets a new modification time, as the file system may not resolve the
+	/// time of two writes within the same test.
+	private void touch(Path file) throws IOException {
+		stamp += 10_000;
+		Files.setLastModifiedTime(file, FileTime.fromMillis(stamp));
+	}
+}
@@ -0,0 +1,179 @@
+package com.greendelta.bioheating.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.greendelta.bioheating.model.Building;
+
+import ml.dmlc.xgboost4j.java.Booster;
+import ml.dmlc.xgboost4j.java.DMatrix;
+import ml.dmlc.xgboost4j.java.XGBoost;
+
+public class TreeEnsembleTest {
+
+	private static final int ROWS = 500;
+	private static final int COLS = 5;
+
+	@Test
+	public void testSquaredError() throws Exception {
+		check("reg:squarederror", false);
+	}
+
+	@Test
+	public void testMissingValues() throws Exception {
+		check("reg:squarederror", true);
+	}
+
+	@Test
+	public void testLogistic() throws Exception {
+		check("reg:logistic", true);
+	}
+
+	@Test
+	public void testLogitRaw() throws Exception {
+		check("binary:logitraw", false);
+	}
+
+	@Test
+	public void testLogitRawBefore2() throws Exception {
+		// before XGBoost 2.0, the base score of `binary:logitraw` was a
+		// probability that is converted into a margin
+		var rand = new Random(42);
+		var data = new float[ROWS * COLS];
+		var labels = new float[ROWS];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = rand.nextFloat();
+		}
+		for (int i = 0; i < ROWS; i++) {
+			labels[i] = data[i * COLS] > 0.5f ? 1 : 0;
+		}
+		var matrix = new DMatrix(data, ROWS, COLS, Float.NaN);
+		matrix.setLabel(labels);
+		var params = new HashMap<String, Object>();
+		params.put("max_depth", 3);
+		params.put("objective", "binary:logitraw");
+		params.put("base_score", 0.3);
+		var booster = XGBoost.train(matrix, params, 5, new HashMap<>(), null, null);
+		var expected = booster.predict(matrix);
+
+		var json = (ObjectNode) new ObjectMapper().readTree(booster.toByteArray("json"));
+		json.putArray("version").add(1).add(7).add(6);
+		var model = TreeEnsemble.read(
+			new ByteArrayInputStream(json.toString().getBytes())).orElseThrow();
+		float shift = (float) -Math.log(1.0 / 0.3 - 1.0) - 0.3f;
+		for (int i = 0; i < ROWS; i++) {
+			float e = expected[i][0] + shift;
+			float actual = model.predict(data, i * COLS);
+			assertEquals(e, actual, 1e-5f * Math.max(1f, Math.abs(e)));
+		}
+	}
+
+	@Test
+	public void testPoisson() throws Exception {
+		check("count:poisson", false);
+	}
+
+	@Test
+	public void testInvalidModel() {
+		var stream = new ByteArrayInputStream("{\"learner\": {}}".getBytes());
+		assertTrue(TreeEnsemble.read(stream).hasError());
+	}
+
+	@Test
+	public void testChunkedBuildings() throws Exception {
+		var rand = new Random(7);
+		var data = new float[ROWS * COLS];
+		var labels = new float[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			for (int j = 0; j < COLS; j++) {
+				data[i * COLS + j] = rand.nextFloat() * 20;
+			}
+			labels[i] = data[i * COLS] * 10 + data[i * COLS + 4];
+		}
+		var matrix = new DMatrix(data, ROWS, COLS, Float.NaN);
+		matrix.setLabel(labels);
+		var params = new HashMap<String, Object>();
+		params.put("max_depth", 4);
+		params.put("objective", "reg:squarederror");
+		var booster = XGBoost.train(matrix, params, 10, new HashMap<>(), null, null);
+		var boost = new BoostPredictor(booster);
+		var trees = TreeEnsemble.read(
+			new ByteArrayInputStream(booster.toByteArray("json"))).orElseThrow();
+
+		// more buildings than fit into a single chunk
+		var buildings = new ArrayList<Building>();
+		for (int i = 0; i < HeatPredictor.CHUNK_SIZE + 100; i++) {
+			buildings.add(new Building()
+				.height(rand.nextDouble() * 20)
+				.storeys(1 + rand.nextInt(5))
+				.climateZone(rand.nextInt(16))
+				.volume(rand.nextDouble() * 20)
+				.heatedArea(rand.nextDouble() * 20));
+		}
+
+		var expected = boost.predictAll(buildings);
+		var actual = trees.predictAll(buildings);
+		assertEquals(buildings.size(), actual.length);
+		for (int i = 0; i < buildings.size(); i++) {
+			float e = expected[i];
+			assertEquals(e, actual[i], 1e-5f * Math.max(1f, Math.abs(e)));
+			assertEquals(actual[i], trees.predict(buildings.get(i)));
+		}
+	}
+
+	/// Trains a model with XGBoost and checks that the Java evaluation gives
+	/// the same predictions.
+	private void check(String objective, boolean withMissing) throws Exception {
+		var rand = new Random(42);
+		var data = new float[ROWS * COLS];
+		var labels = new float[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			for (int j = 0; j < COLS; j++) {
+				data[i * COLS + j] = rand.nextFloat() * 100;
+			}
+			float y = data[i * COLS] * 2 + data[i * COLS + 3] * 0.5f;
+			labels[i] = switch (objective) {
+				case "reg:logistic", "binary:logitraw" -> y > 150 ? 1 : 0;
+				case "count:poisson" -> Math.round(y / 10);
+				default -> y + (float) rand.nextGaussian();
+			};
+			if (withMissing && i % 7 == 0) {
+				data[i * COLS + (i % COLS)] = Float.NaN;
+			}
+		}
+
+		var matrix = new DMatrix(data, ROWS, COLS, Float.NaN);
+		matrix.setLabel(labels);
+		var params = new HashMap<String, Object>();
+		params.put("max_depth", 4);
+		params.put("eta", 0.3);
+		params.put("objective", objective);
+		if (objective.startsWith("binary:")) {
+			// a probability of 0.5 would give a base margin of 0 for any link
+			params.put("base_score", 0.3);
+		}
+		Booster booster = XGBoost.train(matrix, params, 20, new HashMap<>(), null, null);
+		var expected = booster.predict(matrix);
+
+		var json = booster.toByteArray("json");
+		var model = TreeEnsemble.read(new ByteArrayInputStream(json)).orElseThrow();
+		assertEquals(COLS, model.featureCount());
+		assertEquals(20, model.treeCount());
+
+		var actual = new float[ROWS];
+		model.predictAll(data, COLS, actual);
+		for (int i = 0; i < ROWS; i++) {
+			float e = expected[i][0];
+			assertEquals(e, actual[i], 1e-5f * Math.max(1f, Math.abs(e)));
+		}
+	}
+}
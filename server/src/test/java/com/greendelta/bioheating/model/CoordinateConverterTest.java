@@ -0,0 +1,99 @@
+package com.greendelta.bioheating.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+public class CoordinateConverterTest {
+
+	private final CoordinateConverter conv = new CoordinateConverter();
+
+	@Test
+	public void testProjected() {
+		// a building in UTM with mm values and heights
+		var cs = new Coordinate[]{
+			new Coordinate(412_345.123, 5_712_345.678, 101.25),
+			new Coordinate(412_355.123, 5_712_345.678, 101.25),
+			new Coordinate(412_355.123, 5_712_357.001, 101.5),
+			new Coordinate(412_345.123, 5_712_357.001, 101.5),
+			new Coordinate(412_345.123, 5_712_345.678, 101.25)};
+		var bytes = conv.convertToDatabaseColumn(cs);
+		assertTrue(bytes.length * 3 < cs.length * 24);
+		assertExact(cs, conv.convertToEntityAttribute(bytes));
+
+		// without z-values
+		var xy = new Coordinate[cs.length];
+		for (int i = 0; i < cs.length; i++) {
+			xy[i] = new Coordinate(cs[i].x, cs[i].y);
+		}
+		bytes = conv.convertToDatabaseColumn(xy);
+		assertTrue(bytes.length * 4 < cs.length * 24);
+		var read = conv.convertToEntityAttribute(bytes);
+		assertExact(xy, read);
+		assertTrue(Double.isNaN(read[0].getZ()));
+	}
+
+	@Test
+	public void testMillimeterResolution() {
+		// projected coordinates are rounded to mm
+		var cs = new Coordinate[]{
+			new Coordinate(412_345.123456, 5_712_345.987654),
+			new Coordinate(412_346.000400, 5_712_346.000600)};
+		var read = conv.convertToEntityAttribute(conv.convertToDatabaseColumn(cs));
+		assertEquals(412_345.123, read[0].x, 1e-9);
+		assertEquals(5_712_345.988, read[0].y, 1e-9);
+		assertEquals(412_346.0, read[1].x, 1e-9);
+		assertEquals(5_712_346.001, read[1].y, 1e-9);
+
+		// geographic coordinates keep 9 decimals
+		var wgs84 = new Coordinate[]{
+			new Coordinate(9.123456789123, 51.987654321987)};
+		read = conv.convertToEntityAttribute(conv.convertToDatabaseColumn(wgs84));
+		assertEquals(9.123456789, read[0].x, 1e-12);
+		assertEquals(51.987654322, read[0].y, 1e-12);
+	}
+
+	@Test
+	public void testRawValues() {
+		var cs = new Coordinate[]{
+			new Coordinate(1, 2, 3),
+			new Coordinate(Double.NEGATIVE_INFINITY, 2),
+			new Coordinate(1e300, -1e300, 5)};
+		var read = conv.convertToEntityAttribute(conv.convertToDatabaseColumn(cs));
+		assertExact(cs, read);
+	}
+
+	@Test
+	public void testLegacyFormat() {
+		var cs = new Coordinate[]{
+			new Coordinate(412_345.123, 5_712_345.678, Double.NaN),
+			new Coordinate(-12.5, 0, 100)};
+		var buffer = ByteBuffer.allocate(cs.length * 24);
+		for (var c : cs) {
+			buffer.putDouble(c.x);
+			buffer.putDouble(c.y);
+			buffer.putDouble(c.getZ());
+		}
+		assertExact(cs, conv.convertToEntityAttribute(buffer.array()));
+	}
+
+	@Test
+	public void testEmpty() {
+		assertNull(conv.convertToDatabaseColumn(null));
+		assertNull(conv.convertToDatabaseColumn(new Coordinate[0]));
+		assertEquals(0, conv.convertToEntityAttribute(null).length);
+		assertEquals(0, conv.convertToEntityAttribute(new byte[0]).length);
+	}
+
+	private void assertExact(Coordinate[] expected, Coordinate[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i].x, actual[i].x);
+			assertEquals(expected[i].y, actual[i].y);
+			assertEquals(expected[i].getZ(), actual[i].getZ());
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.greendelta.bioheating.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public class CopyWriterTest {
+
+	@Test
+	public void testRow() throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		try (var w = new CopyWriter(bytes)) {
+			w.startRow(7)
+				.writeInt(42)
+				.writeString("Haus")
+				.writeDouble(1.5)
+				.writeBoolean(true)
+				.writeEnum(Inclusion.REQUIRED)
+				.writeRef(null)
+				.writeBytes(new byte[]{1, 2, 3});
+		}
+
+		var buf = ByteBuffer.wrap(bytes.toByteArray());
+		var signature = new byte[11];
+		buf.get(signature);
+		assertEquals("PGCOPY\n", new String(signature, 0, 7, StandardCharsets.US_ASCII));
+		assertEquals((byte) 0xFF, signature[7]);
+		assertEquals(0, buf.getInt()); // flags
+		assertEquals(0, buf.getInt()); // header extension
+
+		assertEquals(7, buf.getShort());
+		assertEquals(4, buf.getInt());
+		assertEquals(42, buf.getInt());
+		assertEquals("Haus", stringOf(buf));
+		assertEquals(8, buf.getInt());
+		assertEquals(1.5, buf.getDouble());
+		assertEquals(1, buf.getInt());
+		assertEquals(1, buf.get());
+		assertEquals("REQUIRED", stringOf(buf));
+		assertEquals(-1, buf.getInt());
+		assertEquals(3, buf.getInt());
+		assertEquals(3, buf.get(buf.position() + 2));
+		buf.position(buf.position() + 3);
+
+		assertEquals(-1, buf.getShort()); // trailer
+		assertFalse(buf.hasRemaining());
+	}
+
+	@Test
+	public void testIntRange() throws IOException {
+		var w = new CopyWriter(new ByteArrayOutputStream());
+		assertThrows(IllegalArgumentException.class,
+			() -> w.writeInt(Integer.MAX_VALUE + 1L));
+	}
+
+	private String stringOf(ByteBuffer buf) {
+		var data = new byte[buf.getInt()];
+		buf.get(data);
+		return new String(data, StandardCharsets.UTF_8);
+	}
+}
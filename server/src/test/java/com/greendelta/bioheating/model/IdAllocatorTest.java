@@ -0,0 +1,78 @@
+package com.greendelta.bioheating.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class IdAllocatorTest {
+
+	private final AtomicLong sequence = new AtomicLong(150);
+	private final AtomicInteger roundTrips = new AtomicInteger();
+
+	private IdAllocator allocator(int blockSize) {
+		return new IdAllocator(n -> {
+			roundTrips.incrementAndGet();
+			return sequence.addAndGet(n);
+		}, blockSize);
+	}
+
+	@Test
+	public void testReserve() {
+		var ids = allocator(10);
+		var block = ids.reserve(3);
+		assertEquals(151, block.first());
+		assertEquals(3, block.size());
+		assertEquals(151, block.next());
+		assertEquals(152, block.next());
+		assertEquals(153, block.next());
+		assertFalse(block.hasNext());
+		assertThrows(IllegalStateException.class, block::next);
+		assertEquals(153, sequence.get());
+
+		var empty = ids.reserve(0);
+		assertFalse(empty.hasNext());
+		assertEquals(1, roundTrips.get());
+	}
+
+	@Test
+	public void testNext() {
+		var ids = allocator(100);
+		for (int i = 1; i <= 250; i++) {
+			assertEquals(150 + i, ids.next());
+		}
+		assertEquals(3, roundTrips.get());
+	}
+
+	@Test
+	public void testThreads() throws Exception {
+		var ids = allocator(64);
+		var seen = ConcurrentHashMap.<Long>newKeySet();
+		int threads = 8, perThread = 1000;
+		try (var exec = Executors.newFixedThreadPool(threads)) {
+			var futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(exec.submit(() -> {
+					var local = new HashSet<Long>();
+					for (int i = 0; i < perThread; i++) {
+						local.add(ids.next());
+					}
+					seen.addAll(local);
+				}));
+			}
+			for (var f : futures) {
+				f.get();
+			}
+		}
+		assertEquals(threads * perThread, seen.size());
+		// one round trip per block and not per ID
+		assertTrue(roundTrips.get() <= threads * (perThread / 64 + 1));
+	}
+}
@@ -0,0 +1,84 @@
+package com.greendelta.bioheating.model.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.ClimateRegion;
+import com.greendelta.bioheating.model.Fuel;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Inclusion;
+import com.greendelta.bioheating.model.Project;
+import com.greendelta.bioheating.model.Street;
+
+public class ClientProjectWriterTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void testSameAsClientProject() throws Exception {
+		var fuel = new Fuel().name("Wood chips").unit("kg");
+		var map = new GeoMap().crs("EPSG:25832");
+		for (int i = 0; i < 3; i++) {
+			var b = new Building()
+				.name("B" + i)
+				.roofType("flat")
+				.height(10 + i)
+				.storeys(3)
+				.heatDemand(1000 * i)
+				.isHeated(i % 2 == 0)
+				.inclusion(Inclusion.OPTIONAL)
+				.coordinates(square(500_000 + i * 20, 5_700_000));
+			b.id(i + 1);
+			if (i == 1) {
+				b.fuel(fuel);
+			}
+			map.buildings().add(b);
+		}
+		var street = new Street()
+			.inclusion(Inclusion.REQUIRED)
+			.coordinates(new Coordinate[]{
+				new Coordinate(500_000, 5_699_990),
+				new Coordinate(500_100, 5_699_990)});
+		map.streets().add(street);
+
+		var project = new Project()
+			.name("Project")
+			.description("A test project")
+			.climateRegion(new ClimateRegion().number(5).name("Region 5"))
+			.defaultFuel(fuel)
+			.map(map);
+
+		var buffer = new ByteArrayOutputStream();
+		ClientProjectWriter.of(project, mapper).orElseThrow().writeTo(buffer);
+		var streamed = mapper.readTree(buffer.toByteArray());
+		var expected = mapper.readTree(
+			mapper.writeValueAsBytes(ClientProject.of(project).orElseThrow()));
+		assertEquals(expected, streamed);
+		assertEquals(4, streamed.get("map").get("features").size());
+
+		// the streamed JSON can be read back as client project
+		var read = mapper.treeToValue(streamed, ClientProject.class);
+		assertEquals(4, read.map().features().size());
+	}
+
+	@Test
+	public void testUndefinedCrs() {
+		var project = new Project().name("Project").map(new GeoMap());
+		assertTrue(ClientProjectWriter.of(project, mapper).hasError());
+	}
+
+	private Coordinate[] square(double x, double y) {
+		return new Coordinate[]{
+			new Coordinate(x, y),
+			new Coordinate(x + 10, y),
+			new Coordinate(x + 10, y + 10),
+			new Coordinate(x, y + 10),
+			new Coordinate(x, y)};
+	}
+}
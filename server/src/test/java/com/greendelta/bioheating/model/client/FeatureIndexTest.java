@@ -0,0 +1,180 @@
+package com.greendelta.bioheating.model.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+
+import com.greendelta.bioheating.io.CoordinateTransformer;
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Inclusion;
+import com.greendelta.bioheating.model.Street;
+
+public class FeatureIndexTest {
+
+	@Test
+	public void testBBox() {
+		// a row of 10 buildings and a street along them
+		var map = new GeoMap().crs("EPSG:25832");
+		for (int i = 0; i < 10; i++) {
+			var b = new Building()
+				.inclusion(Inclusion.OPTIONAL)
+				.coordinates(square(500_000 + i * 100, 5_700_000));
+			b.id(10 + i);
+			map.buildings().add(b);
+		}
+		var street = new Street()
+			.inclusion(Inclusion.OPTIONAL)
+			.coordinates(new Coordinate[]{
+				new Coordinate(500_000, 5_699_990),
+				new Coordinate(501_000, 5_699_990)});
+		street.id(5);
+		map.streets().add(street);
+		var index = FeatureIndex.of(map).orElseThrow();
+		assertEquals(11, index.size());
+
+		// a box around the buildings 2 and 3
+		var page = index.query(wgs84Box(500_205, 5_699_995, 500_305, 5_700_015), 0, 100)
+			.orElseThrow();
+		assertEquals(2, page.count());
+		assertNull(page.next());
+		assertEquals(12L, idOf(page.features().get(0)));
+		assertEquals(13L, idOf(page.features().get(1)));
+
+		// a box that also touches the street
+		page = index.query(wgs84Box(500_205, 5_699_985, 500_305, 5_700_015), 0, 100)
+			.orElseThrow();
+		assertEquals(3, page.count());
+		assertEquals(5L, idOf(page.features().get(0)));
+
+		// a box outside of the map
+		page = index.query(wgs84Box(600_000, 5_800_000, 600_100, 5_800_100), 0, 100)
+			.orElseThrow();
+		assertEquals(0, page.count());
+		assertTrue(page.features().isEmpty());
+	}
+
+	@Test
+	public void testPages() {
+		var map = new GeoMap().crs("EPSG:25832");
+		for (int i = 0; i < 25; i++) {
+			var b = new Building()
+				.inclusion(Inclusion.OPTIONAL)
+				.coordinates(square(500_000 + (i % 5) * 100, 5_700_000 + (i / 5) * 100));
+			b.id(100 - i);
+			map.buildings().add(b);
+		}
+		var index = FeatureIndex.of(map).orElseThrow();
+
+		var ids = new ArrayList<Long>();
+		long cursor = 0;
+		int pages = 0;
+		while (true) {
+			var page = index.query(null, cursor, 10).orElseThrow();
+			assertEquals(25, page.count());
+			pages++;
+			for (var f : page.features()) {
+				ids.add(idOf(f));
+			}
+			if (page.next() == null)
+				break;
+			cursor = page.next();
+		}
+		assertEquals(3, pages);
+		assertEquals(25, ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+			assertEquals(76L + i, ids.get(i));
+		}
+
+		// a cursor of a feature that is not in the result
+		var page = index.query(null, 80, 100).orElseThrow();
+		assertEquals(20, page.features().size());
+		assertEquals(81L, idOf(page.features().getFirst()));
+	}
+
+	@Test
+	public void testSelect() {
+		var map = new GeoMap().crs("EPSG:25832");
+		for (int i = 0; i < 10; i++) {
+			var b = new Building().coordinates(square(500_000 + i * 100, 5_700_000));
+			b.id(10 + i);
+			map.buildings().add(b);
+		}
+		var street = new Street().coordinates(new Coordinate[]{
+			new Coordinate(500_000, 5_699_990),
+			new Coordinate(501_000, 5_699_990)});
+		street.id(5);
+		map.streets().add(street);
+		var index = FeatureIndex.of(map).orElseThrow();
+
+		// a box around the buildings 2 to 4 with a hole around building 3
+		var geometries = new GeometryFactory();
+		var area = geometries.createPolygon(
+			geometries.createLinearRing(wgs84Ring(500_195, 5_699_995, 500_415, 5_700_015)),
+			new LinearRing[]{
+				geometries.createLinearRing(wgs84Ring(500_295, 5_699_997, 500_315, 5_700_013))});
+		var selection = index.select(area).orElseThrow();
+		assertArrayEquals(new long[]{12, 14}, selection.buildings());
+		assertEquals(0, selection.streets().length);
+
+		// a bounding box that also touches the street
+		var box = FeatureIndex.areaOf(wgs84Box(500_205, 5_699_985, 500_305, 5_700_015))
+			.orElseThrow();
+		selection = index.select(box).orElseThrow();
+		assertArrayEquals(new long[]{12, 13}, selection.buildings());
+		assertArrayEquals(new long[]{5}, selection.streets());
+		assertEquals(3, selection.size());
+
+		assertTrue(FeatureIndex.areaOf(new double[]{9.1, 51.2, 9.2, 51.2}).hasError());
+		var open = FeatureIndex.areaOf(new double[]{9.1, 51.2, 9.2, 51.2, 9.2, 51.3})
+			.orElseThrow();
+		assertEquals(4, open.getExteriorRing().getNumPoints());
+	}
+
+	@Test
+	public void testParseBBox() {
+		var env = FeatureIndex.parseBBox("9.1, 51.2,9.3,51.4").orElseThrow();
+		assertEquals(new Envelope(9.1, 9.3, 51.2, 51.4), env);
+		assertTrue(FeatureIndex.parseBBox("9.1,51.2,9.3").hasError());
+		assertTrue(FeatureIndex.parseBBox("9.3,51.2,9.1,51.4").hasError());
+		assertTrue(FeatureIndex.parseBBox("a,b,c,d").hasError());
+	}
+
+	private Envelope wgs84Box(double minX, double minY, double maxX, double maxY) {
+		var wgs84 = CoordinateTransformer.toWgs84From("EPSG:25832").orElseThrow();
+		var cs = wgs84.transform(new Coordinate[]{
+			new Coordinate(minX, minY), new Coordinate(maxX, maxY)}).orElseThrow();
+		return new Envelope(cs[0], cs[1]);
+	}
+
+	private Coordinate[] wgs84Ring(
+		double minX, double minY, double maxX, double maxY
+	) {
+		var wgs84 = CoordinateTransformer.toWgs84From("EPSG:25832").orElseThrow();
+		var cs = wgs84.transform(new Coordinate[]{
+			new Coordinate(minX, minY),
+			new Coordinate(maxX, minY),
+			new Coordinate(maxX, maxY),
+			new Coordinate(minX, maxY)}).orElseThrow();
+		return new Coordinate[]{cs[0], cs[1], cs[2], cs[3], cs[0].copy()};
+	}
+
+	private long idOf(GeoFeature f) {
+		return ((Number) f.properties().get("id")).longValue();
+	}
+
+	private Coordinate[] square(double x, double y) {
+		return new Coordinate[]{
+			new Coordinate(x, y),
+			new Coordinate(x + 10, y),
+			new Coordinate(x + 10, y + 10),
+			new Coordinate(x, y + 10),
+			new Coordinate(x, y)};
+	}
+}
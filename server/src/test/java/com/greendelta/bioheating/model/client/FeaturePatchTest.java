@@ -0,0 +1,72 @@
+package com.greendelta.bioheating.model.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class FeaturePatchTest {
+
+	@Test
+	public void testBatches() {
+		var patch = FeaturePatch.of(List.of(
+			Map.of("@type", "building", "id", 1, "inclusion", "EXCLUDED"),
+			Map.of("@type", "building", "id", 2, "inclusion", "REQUIRED"),
+			Map.of("@type", "building", "id", 3, "inclusion", "OPTIONAL",
+				"heatDemand", 42.5, "fuelId", 7),
+			Map.of("@type", "street", "id", 4, "inclusion", "EXCLUDED"),
+			// no known properties: ignored
+			Map.of("@type", "street", "id", 5, "foo", "bar"))).value();
+
+		var batches = patch.batchesOf(99);
+		assertEquals(3, batches.size());
+
+		var inclusions = batches.get(
+			"UPDATE tbl_buildings SET inclusion = ? WHERE id = ? AND f_map = ?");
+		assertEquals(2, inclusions.size());
+		assertArrayEquals(new Object[]{"EXCLUDED", 1L, 99L}, inclusions.get(0));
+		assertArrayEquals(new Object[]{"REQUIRED", 2L, 99L}, inclusions.get(1));
+
+		var mixed = batches.get("UPDATE tbl_buildings SET heat_demand = ?, "
+			+ "inclusion = ?, f_fuel = ? WHERE id = ? AND f_map = ?");
+		assertArrayEquals(
+			new Object[]{42.5, "OPTIONAL", 7L, 3L, 99L}, mixed.getFirst());
+
+		var streets = batches.get(
+			"UPDATE tbl_streets SET inclusion = ? WHERE id = ? AND f_map = ?");
+		assertArrayEquals(new Object[]{"EXCLUDED", 4L, 99L}, streets.getFirst());
+	}
+
+	@Test
+	public void testNullValues() {
+		var props = new HashMap<String, Object>();
+		props.put("@type", "building");
+		props.put("id", 1);
+		props.put("name", null);
+		props.put("fuelId", null);
+		var batches = FeaturePatch.of(List.of(props)).value().batchesOf(2);
+		var row = batches.get("UPDATE tbl_buildings SET name = ?, f_fuel = ? "
+			+ "WHERE id = ? AND f_map = ?").getFirst();
+		assertArrayEquals(new Object[]{null, null, 1L, 2L}, row);
+	}
+
+	@Test
+	public void testInvalid() {
+		assertTrue(FeaturePatch.of(null).hasError());
+		assertTrue(FeaturePatch.of(List.of(
+			Map.of("@type", "building", "inclusion", "EXCLUDED"))).hasError());
+		assertTrue(FeaturePatch.of(List.of(
+			Map.of("@type", "tree", "id", 1))).hasError());
+		assertTrue(FeaturePatch.of(List.of(
+			Map.of("@type", "building", "id", 1, "inclusion", "MAYBE"))).hasError());
+		assertTrue(FeaturePatch.of(List.of(
+			Map.of("@type", "building", "id", 1, "storeys", 2.5))).hasError());
+		assertTrue(FeaturePatch.of(List.of(
+			Map.of("@type", "building", "id", 1, "isHeated", "yes"))).hasError());
+		assertTrue(FeaturePatch.of(List.of(
+			Map.of("@type", "street", "id", 1, "foo", 1))).value().isEmpty());
+	}
+}
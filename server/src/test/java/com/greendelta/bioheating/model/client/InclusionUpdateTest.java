@@ -0,0 +1,52 @@
+package com.greendelta.bioheating.model.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import com.greendelta.bioheating.io.CoordinateTransformer;
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Inclusion;
+
+public class InclusionUpdateTest {
+
+	@Test
+	public void testBatches() {
+		var map = new GeoMap().crs("EPSG:25832");
+		for (int i = 0; i < 5; i++) {
+			double x = 500_000 + i * 100;
+			var b = new Building().coordinates(new Coordinate[]{
+				new Coordinate(x, 5_700_000),
+				new Coordinate(x + 10, 5_700_000),
+				new Coordinate(x + 10, 5_700_010),
+				new Coordinate(x, 5_700_000)});
+			b.id(i + 1);
+			map.buildings().add(b);
+		}
+		var index = FeatureIndex.of(map).orElseThrow();
+
+		var wgs84 = CoordinateTransformer.toWgs84From("EPSG:25832").orElseThrow();
+		var cs = wgs84.transform(new Coordinate[]{
+			new Coordinate(499_990, 5_699_990),
+			new Coordinate(500_220, 5_700_020)}).orElseThrow();
+		var area = FeatureIndex.areaOf(new Envelope(cs[0], cs[1])).orElseThrow();
+
+		var update = InclusionUpdate.of(index, area, Inclusion.EXCLUDED).orElseThrow();
+		assertEquals(3, update.size());
+		var batches = update.batchesOf(42);
+		assertEquals(1, batches.size());
+		var rows = batches.get(
+			"UPDATE tbl_buildings SET inclusion = ? WHERE f_map = ? AND id = ANY(?)");
+		assertEquals(1, rows.size());
+		var row = rows.getFirst();
+		assertEquals("EXCLUDED", row[0]);
+		assertEquals(42L, row[1]);
+		assertArrayEquals(new long[]{1, 2, 3}, (long[]) row[2]);
+
+		assertTrue(InclusionUpdate.of(index, area, null).hasError());
+		assertTrue(InclusionUpdate.of(index, null, Inclusion.REQUIRED).hasError());
+	}
+}
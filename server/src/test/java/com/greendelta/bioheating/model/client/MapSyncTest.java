@@ -0,0 +1,110 @@
+package com.greendelta.bioheating.model.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.Fuel;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Inclusion;
+import com.greendelta.bioheating.model.Street;
+
+public class MapSyncTest {
+
+	@Test
+	public void testSync() {
+		var map = mapOf(fuelOf(1));
+		sync(map, Map.of(
+			"@type", "building", "id", 1,
+			"name", "B1",
+			"height", 12,
+			"storeys", 3,
+			"isHeated", true,
+			"inclusion", "REQUIRED",
+			"fuelId", 2));
+		sync(map, Map.of(
+			"@type", "street", "id", 2, "name", "S1", "inclusion", "EXCLUDED"));
+
+		var b = map.buildings().getFirst();
+		assertEquals("B1", b.name());
+		assertEquals(12.0, b.height());
+		assertEquals(3, b.storeys());
+		assertTrue(b.isHeated());
+		assertEquals(Inclusion.REQUIRED, b.inclusion());
+		assertEquals(2, b.fuel().id());
+
+		var s = map.streets().getFirst();
+		assertEquals("S1", s.name());
+		assertEquals(Inclusion.EXCLUDED, s.inclusion());
+	}
+
+	@Test
+	public void testTruncateIntegers() {
+		var map = mapOf(null);
+		sync(map, Map.of(
+			"@type", "building", "id", 1, "storeys", 2.7, "climateZone", 4.2));
+		var b = map.buildings().getFirst();
+		assertEquals(2, b.storeys());
+		assertEquals(4, b.climateZone());
+	}
+
+	@Test
+	public void testUnknownFuel() {
+		// an ID of a fuel that does not exist clears the fuel
+		var map = mapOf(fuelOf(1));
+		sync(map, Map.of("@type", "building", "id", 1, "fuelId", 99));
+		assertNull(map.buildings().getFirst().fuel());
+	}
+
+	@Test
+	public void testIgnoreInvalid() {
+		var map = mapOf(fuelOf(1));
+		var props = new HashMap<String, Object>();
+		props.put("@type", "building");
+		props.put("id", 1);
+		props.put("name", 42);
+		props.put("storeys", "3");
+		props.put("isHeated", "yes");
+		props.put("inclusion", "UNKNOWN");
+		props.put("fuelId", null);
+		sync(map, props);
+
+		var b = map.buildings().getFirst();
+		assertEquals("B", b.name());
+		assertEquals(1, b.storeys());
+		assertEquals(Inclusion.OPTIONAL, b.inclusion());
+		assertEquals(1, b.fuel().id());
+	}
+
+	private void sync(GeoMap map, Map<String, Object> props) {
+		var feature = new GeoFeature("Feature", null, props);
+		var clientMap = new ClientMap(List.of(feature));
+		new MapSync(id -> id < 10 ? fuelOf(id) : null, map, clientMap).sync();
+	}
+
+	private GeoMap mapOf(Fuel fuel) {
+		var map = new GeoMap();
+		var b = new Building()
+			.name("B")
+			.storeys(1)
+			.inclusion(Inclusion.OPTIONAL)
+			.fuel(fuel);
+		b.id(1);
+		map.buildings().add(b);
+		var s = new Street().name("S");
+		s.id(2);
+		map.streets().add(s);
+		return map;
+	}
+
+	private Fuel fuelOf(long id) {
+		var fuel = new Fuel().name("fuel " + id);
+		fuel.id(id);
+		return fuel;
+	}
+}
@@ -0,0 +1,239 @@
+package com.greendelta.bioheating.model.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import com.greendelta.bioheating.io.CoordinateTransformer;
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Inclusion;
+import com.greendelta.bioheating.model.Street;
+
+public class VectorTileTest {
+
+	private final GeometryFactory factory = new GeometryFactory();
+
+	@Test
+	public void testSpecExamples() {
+		// the examples from the MVT specification
+		var line = factory.createLineString(new Coordinate[]{
+			xy(2, 2), xy(2, 10), xy(10, 10)});
+		assertArrayEquals(
+			new int[]{9, 4, 4, 18, 0, 16, 16, 0},
+			VectorTile.encodeGeometry(line));
+
+		var polygon = factory.createPolygon(new Coordinate[]{
+			xy(3, 6), xy(8, 12), xy(20, 34), xy(3, 6)});
+		assertArrayEquals(
+			new int[]{9, 6, 12, 18, 10, 12, 24, 44, 15},
+			VectorTile.encodeGeometry(polygon));
+
+		// the exterior ring is reversed when it is counter-clockwise
+		var reversed = factory.createPolygon(new Coordinate[]{
+			xy(3, 6), xy(20, 34), xy(8, 12), xy(3, 6)});
+		assertTrue(areaOf(VectorTile.encodeGeometry(reversed)) > 0);
+
+		// a polygon that collapses to a line is dropped
+		var flat = factory.createPolygon(new Coordinate[]{
+			xy(0, 0), xy(10, 0.2), xy(20, 0), xy(0, 0)});
+		assertEquals(0, VectorTile.encodeGeometry(flat).length);
+	}
+
+	@Test
+	public void testTile() {
+		var map = new GeoMap().crs("EPSG:25832");
+		for (int i = 0; i < 5; i++) {
+			var b = new Building()
+				.name("B" + i)
+				.heatDemand(1000 + i)
+				.inclusion(Inclusion.OPTIONAL)
+				.coordinates(square(500_000 + i * 20, 5_700_000));
+			b.id(i + 1);
+			map.buildings().add(b);
+		}
+		var street = new Street()
+			.name("Main street")
+			.inclusion(Inclusion.REQUIRED)
+			.coordinates(new Coordinate[]{
+				xy(499_000, 5_699_990), xy(501_000, 5_699_990)});
+		street.id(10);
+		map.streets().add(street);
+		var index = FeatureIndex.of(map).orElseThrow();
+
+		// at zoom level 16, all features are in the tile
+		int[] t = tileOf(500_050, 5_700_005, 16);
+		var layers = decode(VectorTile.encode(index, 16, t[0], t[1]).orElseThrow());
+		assertEquals(2, layers.size());
+		var buildings = layers.get(0);
+		assertEquals("buildings", buildings.name);
+		assertEquals(5, buildings.features);
+		assertEquals(VectorTile.EXTENT, buildings.extent);
+		assertTrue(buildings.keys.contains("heatDemand"));
+		assertTrue(buildings.keys.contains("inclusion"));
+		assertFalse(buildings.keys.contains("street")); // null values
+		assertTrue(buildings.strings.contains("B3"));
+		assertTrue(buildings.strings.contains("OPTIONAL"));
+		var streets = layers.get(1);
+		assertEquals("streets", streets.name);
+		assertEquals(1, streets.features);
+		assertTrue(streets.strings.contains("Main street"));
+
+		// at zoom level 8, the buildings are smaller than the tolerance
+		t = tileOf(500_050, 5_700_005, 8);
+		layers = decode(VectorTile.encode(index, 8, t[0], t[1]).orElseThrow());
+		assertEquals(1, layers.size());
+		assertEquals("streets", layers.getFirst().name);
+
+		// an empty tile
+		var empty = VectorTile.encode(index, 16, 0, 0).orElseThrow();
+		assertEquals(0, empty.length);
+
+		// invalid tiles
+		assertTrue(VectorTile.encode(index, 2, 4, 0).hasError());
+		assertTrue(VectorTile.encode(index, -1, 0, 0).hasError());
+	}
+
+	private int[] tileOf(double x, double y, int z) {
+		var wgs84 = CoordinateTransformer.toWgs84From("EPSG:25832").orElseThrow();
+		var c = wgs84.transform(new Coordinate[]{xy(x, y)}).orElseThrow()[0];
+		double n = 1 << z;
+		double lat = Math.toRadians(c.y);
+		int tx = (int) Math.floor((c.x + 180) / 360 * n);
+		int ty = (int) Math.floor(
+			(1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2 * n);
+		return new int[]{tx, ty};
+	}
+
+	/// Calculates the area of the first ring in the command sequence.
+	private double areaOf(int[] commands) {
+		var xs = new ArrayList<Integer>();
+		var ys = new ArrayList<Integer>();
+		int x = 0, y = 0;
+		int i = 0;
+		while (i < commands.length) {
+			int id = commands[i] & 7;
+			int count = commands[i] >> 3;
+			i++;
+			if (id == 7)
+				break;
+			for (int k = 0; k < count; k++) {
+				x += unZigZag(commands[i++]);
+				y += unZigZag(commands[i++]);
+				xs.add(x);
+				ys.add(y);
+			}
+		}
+		double area = 0;
+		for (int k = 0; k < xs.size(); k++) {
+			int j = (k + 1) % xs.size();
+			area += (double) xs.get(k) * ys.get(j) - (double) xs.get(j) * ys.get(k);
+		}
+		return area / 2;
+	}
+
+	private int unZigZag(int n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	private record Layer(
+		String name, int features, long extent, List<String> keys, List<String> strings
+	) {
+	}
+
+	private List<Layer> decode(byte[] tile) {
+		var layers = new ArrayList<Layer>();
+		var r = new Reader(tile, 0, tile.length);
+		while (r.hasNext()) {
+			int tag = (int) r.varint();
+			assertEquals(3, tag >> 3);
+			layers.add(decodeLayer(r.bytes()));
+		}
+		return layers;
+	}
+
+	private Layer decodeLayer(Reader r) {
+		String name = null;
+		int features = 0;
+		long extent = 0;
+		var keys = new ArrayList<String>();
+		var strings = new ArrayList<String>();
+		while (r.hasNext()) {
+			int tag = (int) r.varint();
+			switch (tag >> 3) {
+				case 1 -> name = r.bytes().string();
+				case 2 -> {
+					r.bytes();
+					features++;
+				}
+				case 3 -> keys.add(r.bytes().string());
+				case 4 -> {
+					var value = r.bytes();
+					int valueTag = (int) value.varint();
+					if (valueTag >> 3 == 1) {
+						strings.add(value.bytes().string());
+					}
+				}
+				case 5 -> extent = r.varint();
+				case 15 -> assertEquals(2, r.varint());
+				default -> fail("unexpected field: " + (tag >> 3));
+			}
+		}
+		return new Layer(name, features, extent, keys, strings);
+	}
+
+	private static class Reader {
+
+		private final byte[] data;
+		private final int end;
+		private int pos;
+
+		Reader(byte[] data, int pos, int end) {
+			this.data = data;
+			this.pos = pos;
+			this.end = end;
+		}
+
+		boolean hasNext() {
+			return pos < end;
+		}
+
+		long varint() {
+			long value = 0;
+			int shift = 0;
+			while (true) {
+				byte b = data[pos++];
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+				shift += 7;
+			}
+		}
+
+		Reader bytes() {
+			int length = (int) varint();
+			var r = new Reader(data, pos, pos + length);
+			pos += length;
+			return r;
+		}
+
+		String string() {
+			return new String(data, pos, end - pos, StandardCharsets.UTF_8);
+		}
+	}
+
+	private Coordinate[] square(double x, double y) {
+		return new Coordinate[]{
+			xy(x, y), xy(x + 10, y), xy(x + 10, y + 10), xy(x, y + 10), xy(x, y)};
+	}
+
+	private Coordinate xy(double x, double y) {
+		return new Coordinate(x, y);
+	}
+}
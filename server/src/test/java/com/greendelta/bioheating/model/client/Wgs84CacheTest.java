@@ -0,0 +1,83 @@
+package com.greendelta.bioheating.model.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.GeoMap;
+import com.greendelta.bioheating.model.Inclusion;
+import com.greendelta.bioheating.model.Project;
+
+public class Wgs84CacheTest {
+
+	@Test
+	public void testVersions() {
+		var map = new GeoMap().crs("EPSG:25832");
+		var b = building(1, 500_000);
+		map.buildings().add(b);
+		var cache = Wgs84Cache.of(map).orElseThrow();
+
+		var xy = cache.xyOf(b);
+		assertEquals(10, xy.length);
+		assertEquals(9.0, xy[0], 1e-9);
+		assertSame(xy, cache.xyOf(b));
+
+		// a new instance of the same entity, e.g. after a reload, with
+		// changed properties, uses the cached coordinates
+		var reloaded = building(1, 500_000).heatDemand(42);
+		assertSame(xy, cache.xyOf(reloaded));
+
+		// changed coordinates replace the entry
+		var moved = building(1, 500_100);
+		var movedXY = cache.xyOf(moved);
+		assertNotSame(xy, movedXY);
+		assertTrue(movedXY[0] > xy[0]);
+		assertSame(movedXY, cache.xyOf(moved));
+		assertEquals(1, cache.size());
+
+		// features without ID are not cached
+		var unsaved = building(0, 500_000);
+		assertNotSame(cache.xyOf(unsaved), cache.xyOf(unsaved));
+		assertEquals(1, cache.size());
+		assertNull(cache.xyOf(new Building()));
+	}
+
+	@Test
+	public void testWriterWithCache() throws Exception {
+		var map = new GeoMap().crs("EPSG:25832");
+		for (int i = 1; i <= 3; i++) {
+			map.buildings().add(building(i, 500_000 + i * 20));
+		}
+		var project = new Project().name("Project").map(map);
+		var mapper = new ObjectMapper();
+		var cache = Wgs84Cache.of(map).orElseThrow();
+
+		var plain = new ByteArrayOutputStream();
+		ClientProjectWriter.of(project, mapper).orElseThrow().writeTo(plain);
+		var cached = new ByteArrayOutputStream();
+		ClientProjectWriter.of(project, mapper).orElseThrow()
+			.withCache(cache)
+			.writeTo(cached);
+		assertEquals(3, cache.size());
+		assertEquals(mapper.readTree(plain.toByteArray()),
+			mapper.readTree(cached.toByteArray()));
+	}
+
+	private Building building(long id, double x) {
+		var b = new Building()
+			.inclusion(Inclusion.OPTIONAL)
+			.coordinates(new Coordinate[]{
+				new Coordinate(x, 5_700_000),
+				new Coordinate(x + 10, 5_700_000),
+				new Coordinate(x + 10, 5_700_010),
+				new Coordinate(x, 5_700_010),
+				new Coordinate(x, 5_700_000)});
+		b.id(id);
+		return b;
+	}
+}
@@ -0,0 +1,93 @@
+package com.greendelta.bioheating.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import com.greendelta.bioheating.model.Building;
+import com.greendelta.bioheating.model.GeoMap;
+
+public class MapServiceTest {
+
+	private final MapService maps = new MapService(4, 16);
+
+	@Test
+	public void testCache() {
+		var map = mapOf(false);
+		var index = maps.indexOf(map, maps.version()).value();
+		assertSame(index, maps.indexOf(map, maps.version()).value());
+		var tile = maps.tileOf(map, maps.version(), 0, 0, 0).value();
+		assertSame(tile, maps.tileOf(map, maps.version(), 0, 0, 0).value());
+
+		maps.invalidate(map);
+		assertNotSame(index, maps.indexOf(map, maps.version()).value());
+		assertNotSame(tile, maps.tileOf(map, maps.version(), 0, 0, 0).value());
+	}
+
+	@Test
+	public void testInvalidateWhileCreating() {
+		// the map is invalidated while its index is created, e.g. by a
+		// concurrent update; then, the index and tile are outdated and must
+		// not be cached
+		var map = mapOf(true);
+		var tile = maps.tileOf(map, maps.version(), 0, 0, 0).value();
+		var index = maps.indexOf(map, maps.version()).value();
+		assertNotSame(tile, maps.tileOf(map, maps.version(), 0, 0, 0).value());
+		assertSame(index, maps.indexOf(map, maps.version()).value());
+	}
+
+	@Test
+	public void testInvalidateAfterLoading() {
+		// the map is loaded, then modified and invalidated by another request
+		// before its index is created; the index of the loaded map is then
+		// outdated and must not be cached
+		long version = maps.version();
+		var map = mapOf(false);
+		maps.invalidate(map);
+		var index = maps.indexOf(map, version).value();
+		var tile = maps.tileOf(map, version, 0, 0, 0).value();
+		assertNotSame(index, maps.indexOf(map, maps.version()).value());
+		assertNotSame(tile, maps.tileOf(map, maps.version(), 0, 0, 0).value());
+
+		// a map that is loaded after the invalidation is cached
+		long next = maps.version();
+		var fresh = mapOf(false);
+		var freshIndex = maps.indexOf(fresh, next).value();
+		assertSame(freshIndex, maps.indexOf(fresh, maps.version()).value());
+	}
+
+	/// Creates a map with one building. When `invalidating` is set, the map
+	/// is invalidated the first time its buildings are accessed.
+	private GeoMap mapOf(boolean invalidating) {
+		var map = new GeoMap() {
+
+			private boolean invalidated = true;
+
+			@Override
+			public List<Building> buildings() {
+				if (!invalidated) {
+					invalidated = true;
+					maps.invalidate(this);
+				}
+				return super.buildings();
+			}
+		};
+		map.crs("EPSG:25832");
+		map.id(42);
+		var b = new Building()
+			.name("B")
+			.coordinates(new Coordinate[]{
+				new Coordinate(500_000, 5_700_000),
+				new Coordinate(500_010, 5_700_000),
+				new Coordinate(500_010, 5_700_010),
+				new Coordinate(500_000, 5_700_010),
+				new Coordinate(500_000, 5_700_000)});
+		b.id(1);
+		map.buildings().add(b);
+		map.invalidated = !invalidating;
+		return map;
+	}
+}